@@ -4,42 +4,222 @@ import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
+import android.os.SystemClock;
 
-import io.github.escposjava.print.Printer;
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.UUID;
 
-public class BluetoothPrinter implements Printer {
+/**
+ * Sends commands over RFCOMM in chunks, so cheap printers with small receive
+ * buffers are not overrun. Between chunks it waits pacingMillis, and with
+ * adaptive pacing more when writes start to block, which is how a full link
+ * or a busy printer shows, then less again as writes speed up. Printers that
+ * send XOFF when their buffer fills are waited on until they send XON.
+ * Failed writes throw {@link PrinterWriteException}, failing the job.
+ * <p>
+ * What the printer sends is taken in by one reader: XON and XOFF are picked
+ * out for flow control and every other byte, e.g. a status reply, is kept
+ * for {@link #read(byte[], int, int, int)}.
+ */
+public class BluetoothPrinter implements ReadablePrinter {
     private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    public static final int DEFAULT_CHUNK_SIZE = 512;
+    public static final int DEFAULT_PACING_MILLIS = 0;
+    public static final int MAX_PACING_MILLIS = 200;
+    public static final int XON_TIMEOUT_MILLIS = 10000;
+    private static final byte XON = 0x11;
+    private static final byte XOFF = 0x13;
+    // A write taking this much longer than usual means the printer is not keeping up
+    private static final int SLOW_WRITE_FACTOR = 4;
+    private static final int SLOW_WRITE_MIN_MILLIS = 20;
+    // Replies not read yet beyond this are dropped
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
     private BluetoothAdapter adapter;
 
+    private BluetoothSocket socket = null;
     private OutputStream printer = null;
+    private InputStream input = null;
     private final String address;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int pacingMillis = DEFAULT_PACING_MILLIS;
+    private boolean adaptivePacing = true;
+    private volatile boolean xonXoff = false;
+    // Pacing as adapted to the printer, and the usual write time in 1/8 ms
+    private int delayMillis = DEFAULT_PACING_MILLIS;
+    private long averageWriteEighths = 0;
+    private final Object inputLock = new Object();
+    // Guarded by inputLock, filled by receive
+    private final byte[] scratch = new byte[RECEIVE_BUFFER_SIZE];
+    private final byte[] received = new byte[RECEIVE_BUFFER_SIZE];
+    private int receivedCount = 0;
+    private boolean paused = false;
 
     public BluetoothPrinter(String address) {
         adapter = BluetoothAdapter.getDefaultAdapter();
         this.address = address;
     }
 
+    /**
+     * @param chunkSize      most bytes sent in one write.
+     * @param pacingMillis   least wait between chunks.
+     * @param adaptivePacing whether to wait longer while writes block.
+     * @param xonXoff        whether the printer uses XON/XOFF flow control.
+     */
+    public synchronized void setFlowControl(int chunkSize, int pacingMillis, boolean adaptivePacing,
+            boolean xonXoff) {
+        if (chunkSize < 1 || pacingMillis < 0 || pacingMillis > MAX_PACING_MILLIS) {
+            throw new IllegalArgumentException("Chunk size must be positive and pacing 0 to "
+                    + MAX_PACING_MILLIS + " ms");
+        }
+        this.chunkSize = chunkSize;
+        this.pacingMillis = pacingMillis;
+        this.adaptivePacing = adaptivePacing;
+        this.xonXoff = xonXoff;
+        this.delayMillis = pacingMillis;
+    }
+
     public void open() throws IOException {
         BluetoothDevice device = adapter.getRemoteDevice(address);
         @SuppressLint("MissingPermission") BluetoothSocket socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
         socket.connect();
+        this.socket = socket;
         printer = socket.getOutputStream();
+        input = socket.getInputStream();
+        delayMillis = pacingMillis;
+        averageWriteEighths = 0;
+        synchronized (inputLock) {
+            receivedCount = 0;
+            paused = false;
+        }
     }
 
-    public void write(byte[] command) {
+    public synchronized void write(byte[] command) {
+        if (printer == null) {
+            throw new PrinterWriteException("Printer " + address + " is not open");
+        }
         try {
-            printer.write(command);
+            for (int offset = 0; offset < command.length; offset += chunkSize) {
+                if (offset > 0 && delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                if (xonXoff) {
+                    awaitXon();
+                }
+                int length = Math.min(chunkSize, command.length - offset);
+                long started = SystemClock.elapsedRealtime();
+                printer.write(command, offset, length);
+                adaptPacing(SystemClock.elapsedRealtime() - started);
+            }
+            printer.flush();
         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            throw new PrinterWriteException("Could not write to printer " + address, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrinterWriteException("Write to printer " + address + " was interrupted", e);
+        }
+    }
+
+    public int read(byte[] buffer, int offset, int length, int timeoutMillis) throws IOException {
+        InputStream input = this.input;
+        if (input == null) {
+            throw new IOException("Printer " + address + " is not open");
+        }
+        long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        while (true) {
+            synchronized (inputLock) {
+                receive(input);
+                if (receivedCount > 0) {
+                    int n = Math.min(length, receivedCount);
+                    System.arraycopy(received, 0, buffer, offset, n);
+                    System.arraycopy(received, n, received, 0, receivedCount - n);
+                    receivedCount -= n;
+                    return n;
+                }
+            }
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                return 0;
+            }
+            SystemClock.sleep(10);
         }
     }
 
     public void close() throws IOException {
-        printer.close();
+        if (socket != null) {
+            socket.close();
+        } else if (printer != null) {
+            printer.close();
+        }
+        printer = null;
+        input = null;
+        socket = null;
+    }
+
+    /**
+     * Doubles the delay after a write that blocked much longer than usual,
+     * and takes it back down a millisecond per normal write.
+     */
+    private void adaptPacing(long writeMillis) {
+        if (!adaptivePacing) {
+            return;
+        }
+        long eighths = writeMillis * 8;
+        long average = averageWriteEighths;
+        if (average > 0 && writeMillis >= SLOW_WRITE_MIN_MILLIS && eighths > average * SLOW_WRITE_FACTOR) {
+            delayMillis = Math.min(Math.max(delayMillis * 2, 1), MAX_PACING_MILLIS);
+        } else if (delayMillis > pacingMillis) {
+            delayMillis--;
+        }
+        // Moving average over about eight writes, slow ones included
+        averageWriteEighths = average == 0 ? Math.max(eighths, 1) : average + (eighths - average) / 8;
+    }
+
+    /**
+     * Takes in what the printer sent; if the last flow control byte is XOFF,
+     * waits for XON.
+     */
+    private void awaitXon() throws IOException, InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + XON_TIMEOUT_MILLIS;
+        while (true) {
+            synchronized (inputLock) {
+                receive(input);
+                if (!paused) {
+                    return;
+                }
+            }
+            if (SystemClock.elapsedRealtime() > deadline) {
+                throw new PrinterWriteException("Printer " + address + " did not resume after XOFF");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Reads everything available without blocking. With XON/XOFF flow control
+     * the flow control bytes set paused, all other bytes are kept in received.
+     */
+    private void receive(InputStream input) throws IOException {
+        int available;
+        while ((available = input.available()) > 0) {
+            int n = input.read(scratch, 0, Math.min(available, scratch.length));
+            if (n < 0) {
+                throw new EOFException("Printer " + address + " closed the connection");
+            }
+            boolean flowControl = xonXoff;
+            for (int i = 0; i < n; i++) {
+                byte b = scratch[i];
+                if (flowControl && b == XOFF) {
+                    paused = true;
+                } else if (flowControl && b == XON) {
+                    paused = false;
+                } else if (receivedCount < received.length) {
+                    received[receivedCount++] = b;
+                }
+            }
+        }
     }
 }
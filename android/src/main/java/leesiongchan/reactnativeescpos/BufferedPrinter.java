@@ -0,0 +1,136 @@
+package gmrcp.reactnativeescpos;
+
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
+import io.github.escposjava.print.Printer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Printer that, when buffering is enabled, collects writes into one growable
+ * buffer and sends them to the wrapped printer as a single write: on
+ * {@link #flush()}, once flushThreshold bytes are waiting, or lingerMillis
+ * after the first waiting write. Each write to a Bluetooth or network printer
+ * costs a packet, so a receipt built from many small calls goes out in one
+ * or a few. With buffering disabled, writes pass straight through.
+ * <p>
+ * A linger flush that fails is reported by the next write or flush, so the
+ * job that follows fails and the connection is seen to be broken.
+ */
+public class BufferedPrinter implements Printer {
+    public static final int DEFAULT_FLUSH_THRESHOLD = 16 * 1024;
+    public static final long DEFAULT_LINGER_MILLIS = 50;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final ScheduledExecutorService lingerTimer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "EscPos linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Printer printer;
+    private boolean enabled = false;
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private long lingerMillis = DEFAULT_LINGER_MILLIS;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int count = 0;
+    private ScheduledFuture<?> lingerFlush;
+    private RuntimeException lingerFailure;
+
+    public BufferedPrinter(Printer printer) {
+        this.printer = printer;
+    }
+
+    public Printer getPrinter() {
+        return printer;
+    }
+
+    /**
+     * @param flushThreshold bytes to collect before they are sent.
+     * @param lingerMillis   how long a write may wait for more to join it, 0 to wait for a flush.
+     */
+    public synchronized void setBuffering(boolean enabled, int flushThreshold, long lingerMillis) {
+        if (!enabled) {
+            flush();
+        }
+        this.enabled = enabled;
+        this.flushThreshold = Math.max(flushThreshold, 1);
+        this.lingerMillis = Math.max(lingerMillis, 0);
+    }
+
+    @Override
+    public void open() throws IOException {
+        printer.open();
+        synchronized (this) {
+            // Commands lost with the previous connection are not retried
+            lingerFailure = null;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] command) {
+        throwLingerFailure();
+        if (!enabled) {
+            printer.write(command);
+            return;
+        }
+        if (count + command.length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(count + command.length, buffer.length * 2));
+        }
+        System.arraycopy(command, 0, buffer, count, command.length);
+        count += command.length;
+
+        if (count >= flushThreshold) {
+            flush();
+        } else if (lingerFlush == null && lingerMillis > 0) {
+            lingerFlush = lingerTimer.schedule(this::flushLingering, lingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends everything collected so far.
+     */
+    public synchronized void flush() {
+        if (lingerFlush != null) {
+            lingerFlush.cancel(false);
+            lingerFlush = null;
+        }
+        throwLingerFailure();
+        if (count == 0) {
+            return;
+        }
+        byte[] bytes = Arrays.copyOf(buffer, count);
+        count = 0;
+        printer.write(bytes);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            printer.close();
+        }
+    }
+
+    private synchronized void flushLingering() {
+        lingerFlush = null;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            lingerFailure = e;
+        }
+    }
+
+    private void throwLingerFailure() {
+        RuntimeException failure = lingerFailure;
+        if (failure != null) {
+            lingerFailure = null;
+            throw new PrinterWriteException("Could not send buffered commands", failure);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package gmrcp.reactnativeescpos;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps printer connections open between jobs and checks on them: every
+ * probe interval an idle connection is sent a DLE EOT status request, and a
+ * link found broken, by the probe or by a failed job, is reopened in the
+ * background with exponential backoff. Connections unused for the idle
+ * timeout are closed and reopened by their next job. Opening, probing and
+ * closing run on the printer's writer thread, in order with its jobs; a new
+ * connection is first opened by its first job.
+ * <p>
+ * A job that fails because the link broke is not retried, part of it may
+ * have printed.
+ */
+public class ConnectionManager {
+    public enum State {
+        /** Open and answering. */
+        CONNECTED,
+        /** The link broke, being reopened. */
+        RECONNECTING,
+        /** Closed after the idle timeout, reopened by the next job. */
+        IDLE,
+        /** Not opened yet, or reconnecting gave up. The next job opens it. */
+        DISCONNECTED
+    }
+
+    public interface Listener {
+        void onStateChanged(String address, State state, int attempt, Throwable error);
+    }
+
+    public static class Connection {
+        private final String address;
+        private final PrinterService printerService;
+        private final PrintJobQueue queue;
+        // Guarded by the manager
+        private boolean removed = false;
+        private ScheduledFuture<?> tick;
+        private ScheduledFuture<?> retry;
+        private ScheduledFuture<?> disconnect;
+        // Set on the writer thread, lastUsed also by touch; read from any thread
+        private volatile State state = State.DISCONNECTED;
+        private volatile long lastUsed = SystemClock.elapsedRealtime();
+        // Used on the writer thread only
+        private int attempt = 0;
+
+        private Connection(String address, PrinterService printerService, PrintJobQueue queue) {
+            this.address = address;
+            this.printerService = printerService;
+            this.queue = queue;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public PrinterService getPrinterService() {
+            return printerService;
+        }
+
+        public PrintJobQueue getQueue() {
+            return queue;
+        }
+
+        public State getState() {
+            return state;
+        }
+    }
+
+    private static final String LOG_TAG = ConnectionManager.class.getSimpleName();
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 0;
+    public static final int DEFAULT_MAX_RECONNECT_ATTEMPTS = 8;
+    private static final long FIRST_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 60000;
+
+    private final Map<String, Connection> connections = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EscPos keep-alive");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Listener listener;
+    private volatile long probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
+    private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private volatile int maxReconnectAttempts = DEFAULT_MAX_RECONNECT_ATTEMPTS;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param probeIntervalMillis  how often idle connections are checked, 0 to not probe.
+     * @param idleTimeoutMillis    how long a connection stays open without jobs, 0 for as long as it is added.
+     * @param maxReconnectAttempts reconnects to try after a link broke before giving up.
+     */
+    public void setOptions(long probeIntervalMillis, long idleTimeoutMillis, int maxReconnectAttempts) {
+        if (probeIntervalMillis < 0 || idleTimeoutMillis < 0 || maxReconnectAttempts < 0) {
+            throw new IllegalArgumentException("Connection options must not be negative");
+        }
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxReconnectAttempts = maxReconnectAttempts;
+        synchronized (this) {
+            for (Connection connection : connections.values()) {
+                scheduleTick(connection);
+            }
+        }
+    }
+
+    /**
+     * Adds a connection that is not open yet, replacing and closing any to the
+     * same address. Its first job opens it on the writer thread.
+     */
+    public Connection add(String address, PrinterService printerService, PrintJobQueue queue) {
+        Connection connection = new Connection(address, printerService, queue);
+        Connection previous;
+        synchronized (this) {
+            previous = connections.put(address, connection);
+            scheduleTick(connection);
+        }
+        if (previous != null) {
+            close(previous);
+        }
+        return connection;
+    }
+
+    public synchronized Connection get(String address) {
+        return connections.get(address);
+    }
+
+    /**
+     * Marks connection as used by a newly queued job, cancelling a pending disconnect.
+     */
+    public synchronized void touch(Connection connection) {
+        cancel(connection.disconnect);
+        connection.disconnect = null;
+        connection.lastUsed = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Runs job on the writer thread, first reopening the connection if needed.
+     * A job failing to write to the printer marks the link broken.
+     */
+    public Object run(Connection connection, PrintJobQueue.Job job) throws Exception {
+        if (connection.state != State.CONNECTED) {
+            cancelRetry(connection);
+            try {
+                connection.printerService.open();
+            } catch (IOException | RuntimeException e) {
+                setState(connection, State.DISCONNECTED, 0, e);
+                throw e;
+            }
+            connection.attempt = 0;
+            setState(connection, State.CONNECTED, 0, null);
+        }
+        try {
+            return job.run();
+        } catch (PrinterWriteException e) {
+            linkLost(connection, e);
+            throw e;
+        } finally {
+            connection.lastUsed = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Closes and removes the connection to address after delayMillis, unless
+     * a job is queued on it in the meantime. Queued jobs finish first.
+     */
+    public synchronized void disconnect(final String address, long delayMillis) {
+        final Connection connection = connections.get(address);
+        if (connection == null) {
+            return;
+        }
+        cancel(connection.disconnect);
+        connection.disconnect = timer.schedule(() -> {
+            synchronized (ConnectionManager.this) {
+                if (connections.get(address) != connection || connection.disconnect == null) {
+                    return;
+                }
+                connections.remove(address);
+            }
+            close(connection);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes and removes the connection to address now, after its queued jobs.
+     */
+    public void remove(String address) {
+        Connection connection;
+        synchronized (this) {
+            connection = connections.remove(address);
+        }
+        if (connection != null) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Tells the manager the link to address went down, e.g. when Android
+     * reports the Bluetooth device disconnected.
+     */
+    public void onLinkLost(String address) {
+        final Connection connection = get(address);
+        if (connection != null) {
+            connection.queue.post(() -> {
+                if (connection.state == State.CONNECTED) {
+                    linkLost(connection, new IOException("Link to " + address + " was lost"));
+                }
+            });
+        }
+    }
+
+    private void close(final Connection connection) {
+        synchronized (this) {
+            connection.removed = true;
+            cancel(connection.tick);
+            cancel(connection.retry);
+            cancel(connection.disconnect);
+        }
+        connection.queue.post(() -> {
+            try {
+                connection.printerService.close();
+            } catch (IOException | RuntimeException e) {
+                Log.w(LOG_TAG, "Could not close printer " + connection.address, e);
+            }
+        });
+        connection.queue.shutdown();
+    }
+
+    private synchronized void scheduleTick(final Connection connection) {
+        cancel(connection.tick);
+        connection.tick = null;
+        long interval = probeIntervalMillis;
+        long idleTimeout = idleTimeoutMillis;
+        if (connection.removed || (interval == 0 && idleTimeout == 0)) {
+            return;
+        }
+        long delay = interval == 0 ? idleTimeout : idleTimeout == 0 ? interval : Math.min(interval, idleTimeout);
+        connection.tick = timer.schedule(() -> {
+            connection.queue.post(() -> tick(connection));
+            scheduleTick(connection);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs on the writer thread between jobs: closes a connection idle for
+     * too long, else checks on it if it has been idle since the last check.
+     */
+    private void tick(Connection connection) {
+        if (connection.state != State.CONNECTED) {
+            return;
+        }
+        long idle = SystemClock.elapsedRealtime() - connection.lastUsed;
+        if (idleTimeoutMillis > 0 && idle >= idleTimeoutMillis) {
+            try {
+                connection.printerService.close();
+            } catch (IOException | RuntimeException e) {
+                Log.w(LOG_TAG, "Could not close idle printer " + connection.address, e);
+            }
+            setState(connection, State.IDLE, 0, null);
+        } else if (probeIntervalMillis > 0 && idle >= probeIntervalMillis) {
+            try {
+                probe(connection);
+            } catch (IOException | RuntimeException e) {
+                linkLost(connection, e);
+            }
+        }
+    }
+
+    /**
+     * Asks a printer that can be read from for its status, which also tells
+     * listeners of changes. A printer that answered before must answer again.
+     * Printers that don't answer are sent DLE EOT 1 and only need to take it,
+     * so a broken link still shows as a failed write.
+     */
+    private void probe(Connection connection) throws IOException {
+        PrinterService printerService = connection.printerService;
+        if (printerService.getPrinter() instanceof ReadablePrinter && printerService.getStatus(0) != null) {
+            return;
+        }
+        printerService.write(PrinterStatus.request(1));
+        printerService.flush();
+    }
+
+    private void linkLost(Connection connection, Exception error) {
+        Log.w(LOG_TAG, "Link to printer " + connection.address + " broke", error);
+        try {
+            connection.printerService.close();
+        } catch (IOException | RuntimeException e) {
+            // The link is gone already
+        }
+        connection.attempt = 0;
+        setState(connection, State.RECONNECTING, 0, error);
+        scheduleRetry(connection);
+    }
+
+    private void scheduleRetry(final Connection connection) {
+        int attempt = connection.attempt + 1;
+        if (attempt > maxReconnectAttempts) {
+            setState(connection, State.DISCONNECTED, connection.attempt, null);
+            return;
+        }
+        connection.attempt = attempt;
+        long delay = Math.min(FIRST_RETRY_MILLIS << Math.min(attempt - 1, 16), MAX_RETRY_MILLIS);
+        synchronized (this) {
+            if (connection.removed) {
+                return;
+            }
+            cancel(connection.retry);
+            connection.retry = timer.schedule(() -> connection.queue.post(() -> reconnect(connection, attempt)),
+                    delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconnect(Connection connection, int attempt) {
+        if (connection.state != State.RECONNECTING || connection.attempt != attempt) {
+            // A job reopened it, or a newer attempt is due
+            return;
+        }
+        try {
+            connection.printerService.open();
+        } catch (IOException | RuntimeException e) {
+            setState(connection, State.RECONNECTING, attempt, e);
+            scheduleRetry(connection);
+            return;
+        }
+        connection.attempt = 0;
+        connection.lastUsed = SystemClock.elapsedRealtime();
+        setState(connection, State.CONNECTED, attempt, null);
+    }
+
+    private void cancelRetry(Connection connection) {
+        synchronized (this) {
+            cancel(connection.retry);
+            connection.retry = null;
+        }
+    }
+
+    private void setState(Connection connection, State state, int attempt, Throwable error) {
+        boolean changed = connection.state != state;
+        connection.state = state;
+        Listener listener = this.listener;
+        // Failed reconnect attempts are reported too
+        if (listener != null && (changed || error != null)) {
+            listener.onStateChanged(connection.address, state, attempt, error);
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
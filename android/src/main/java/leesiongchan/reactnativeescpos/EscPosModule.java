@@ -14,22 +14,27 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
-import io.github.escposjava.print.NetworkPrinter;
 import io.github.escposjava.print.Printer;
-import io.github.escposjava.print.exceptions.BarcodeSizeError;
-import io.github.escposjava.print.exceptions.QRCodeException;
-import gmrcp.reactnativeescpos.helpers.EscPosHelper;
+import gmrcp.reactnativeescpos.command.CodePage;
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+import gmrcp.reactnativeescpos.helpers.ImageCache;
+import gmrcp.reactnativeescpos.helpers.LogoRegistry;
 import gmrcp.reactnativeescpos.helpers.PrinterNotFoundException;
+import gmrcp.reactnativeescpos.utils.Ditherer;
 import android.util.Log;
 
 public class EscPosModule extends ReactContextBaseJavaModule {
@@ -37,16 +42,45 @@ public class EscPosModule extends ReactContextBaseJavaModule {
     public static final String PRINTING_SIZE_58_MM = "PRINTING_SIZE_58_MM";
     public static final String PRINTING_SIZE_76_MM = "PRINTING_SIZE_76_MM";
     public static final String PRINTING_SIZE_80_MM = "PRINTING_SIZE_80_MM";
+    public static final String IMAGE_MODE_BIT_IMAGE = "IMAGE_MODE_BIT_IMAGE";
+    public static final String IMAGE_MODE_RASTER = "IMAGE_MODE_RASTER";
+    public static final String IMAGE_MODE_GRAPHICS = "IMAGE_MODE_GRAPHICS";
+    public static final String DITHER_THRESHOLD = "DITHER_THRESHOLD";
+    public static final String DITHER_BAYER = "DITHER_BAYER";
+    public static final String DITHER_FLOYD_STEINBERG = "DITHER_FLOYD_STEINBERG";
+    public static final String DITHER_ATKINSON = "DITHER_ATKINSON";
+    public static final String QR_CODE_MODE_NATIVE = "QR_CODE_MODE_NATIVE";
+    public static final String QR_CODE_MODE_RASTER = "QR_CODE_MODE_RASTER";
+    public static final String QR_ERROR_CORRECTION_L = "QR_ERROR_CORRECTION_L";
+    public static final String QR_ERROR_CORRECTION_M = "QR_ERROR_CORRECTION_M";
+    public static final String QR_ERROR_CORRECTION_Q = "QR_ERROR_CORRECTION_Q";
+    public static final String QR_ERROR_CORRECTION_H = "QR_ERROR_CORRECTION_H";
+    public static final String SYMBOL_MODE_NATIVE = "SYMBOL_MODE_NATIVE";
+    public static final String SYMBOL_MODE_RASTER = "SYMBOL_MODE_RASTER";
+    public static final String CODE_PAGE_PREFIX = "CODE_PAGE_";
+    public static final String LOGO_TARGET_NV = "LOGO_TARGET_NV";
+    public static final String LOGO_TARGET_DOWNLOAD = "LOGO_TARGET_DOWNLOAD";
+    public static final String LOGO_TARGET_LEGACY_NV = "LOGO_TARGET_LEGACY_NV";
     public static final String BLUETOOTH_CONNECTED = "BLUETOOTH_CONNECTED";
     public static final String BLUETOOTH_DISCONNECTED = "BLUETOOTH_DISCONNECTED";
     public static final String BLUETOOTH_DEVICE_FOUND = "BLUETOOTH_DEVICE_FOUND";
     public static final String ERROR_PRINTER_CONNECTION = "Could not connect to printer";
     public static final String ERROR_PRINTER_MISSING_ARGUMENTS = "Missing connection address or printer type";
+    private static final String IMAGE_CACHE_DIRECTORY = "escpos-images";
 
     private final ReactApplicationContext reactContext;
     private ReadableMap config;
     private ScanManager scanManager;
-    private static Map<String, PrinterService> printerServices = new HashMap<>();
+    private static final ConnectionManager connectionManager = new ConnectionManager();
+    // Tag of the jobs queued for each address, see setJobTag
+    private final Map<String, String> jobTags = new ConcurrentHashMap<>();
+
+    /**
+     * A job run on a printer's writer thread, see {@link PrintJobQueue}.
+     */
+    private interface PrinterJob {
+        Object run(PrinterService printerService) throws Exception;
+    }
 
     enum BluetoothEvent {
         CONNECTED, DISCONNECTED, DEVICE_FOUND, NONE
@@ -56,6 +90,7 @@ public class EscPosModule extends ReactContextBaseJavaModule {
         super(reactContext);
         this.reactContext = reactContext;
         scanManager = new ScanManager(reactContext, BluetoothAdapter.getDefaultAdapter());
+        connectionManager.setListener(connectionListener);
     }
 
     @Override
@@ -64,6 +99,27 @@ public class EscPosModule extends ReactContextBaseJavaModule {
         constants.put(PRINTING_SIZE_58_MM, PRINTING_SIZE_58_MM);
         constants.put(PRINTING_SIZE_76_MM, PRINTING_SIZE_76_MM);
         constants.put(PRINTING_SIZE_80_MM, PRINTING_SIZE_80_MM);
+        constants.put(IMAGE_MODE_BIT_IMAGE, IMAGE_MODE_BIT_IMAGE);
+        constants.put(IMAGE_MODE_RASTER, IMAGE_MODE_RASTER);
+        constants.put(IMAGE_MODE_GRAPHICS, IMAGE_MODE_GRAPHICS);
+        constants.put(DITHER_THRESHOLD, Ditherer.Mode.THRESHOLD.name());
+        constants.put(DITHER_BAYER, Ditherer.Mode.BAYER.name());
+        constants.put(DITHER_FLOYD_STEINBERG, Ditherer.Mode.FLOYD_STEINBERG.name());
+        constants.put(DITHER_ATKINSON, Ditherer.Mode.ATKINSON.name());
+        constants.put(QR_CODE_MODE_NATIVE, QR_CODE_MODE_NATIVE);
+        constants.put(QR_CODE_MODE_RASTER, QR_CODE_MODE_RASTER);
+        constants.put(QR_ERROR_CORRECTION_L, ErrorCorrectionLevel.L.name());
+        constants.put(QR_ERROR_CORRECTION_M, ErrorCorrectionLevel.M.name());
+        constants.put(QR_ERROR_CORRECTION_Q, ErrorCorrectionLevel.Q.name());
+        constants.put(QR_ERROR_CORRECTION_H, ErrorCorrectionLevel.H.name());
+        constants.put(SYMBOL_MODE_NATIVE, SYMBOL_MODE_NATIVE);
+        constants.put(SYMBOL_MODE_RASTER, SYMBOL_MODE_RASTER);
+        for (CodePage codePage : CodePage.values()) {
+            constants.put(CODE_PAGE_PREFIX + codePage.name(), codePage.name());
+        }
+        constants.put(LOGO_TARGET_NV, LOGO_TARGET_NV);
+        constants.put(LOGO_TARGET_DOWNLOAD, LOGO_TARGET_DOWNLOAD);
+        constants.put(LOGO_TARGET_LEGACY_NV, LOGO_TARGET_LEGACY_NV);
         constants.put(BLUETOOTH_CONNECTED, BluetoothEvent.CONNECTED.name());
         constants.put(BLUETOOTH_DISCONNECTED, BluetoothEvent.DISCONNECTED.name());
         constants.put(BLUETOOTH_DEVICE_FOUND, BluetoothEvent.DEVICE_FOUND.name());
@@ -82,21 +138,23 @@ public class EscPosModule extends ReactContextBaseJavaModule {
                  throw new IllegalArgumentException(ERROR_PRINTER_MISSING_ARGUMENTS);
             }
             Printer printer;
-            if (printerServices.get(address) == null) {
+            if (connectionManager.get(address) == null) {
                 if ("bluetooth".equals(type)) {
                     printer = new BluetoothPrinter(address);
                 } else {
-                    printer = new NetworkPrinter(address, port);
+                    printer = new NioNetworkPrinter(address, port);
                 }
                 if (Objects.isNull(printer)) {
                     throw new PrinterNotFoundException(ERROR_PRINTER_CONNECTION);
                 }
-                PrinterService printerService = new PrinterService(printer);
+                // Opened by its first job on the writer thread
+                PrinterService printerService = new PrinterService(printer, false);
                 if (Objects.isNull(printerService)) {
                     throw new PrinterNotFoundException(ERROR_PRINTER_CONNECTION);
                 }
-                printerService.setContext(reactContext);
-                printerServices.put(address, printerService);
+                printerService.setLogoRegistry(new LogoRegistry(reactContext, address));
+                printerService.setStatusListener(status -> emitStatusEvent(address, status));
+                connectionManager.add(address, printerService, new PrintJobQueue(address, jobListener));
             }
             promise.resolve(true);
         } catch (IOException | PrinterNotFoundException e) {
@@ -110,104 +168,158 @@ public class EscPosModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void cutPart(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "cutPart", promise, printerService -> {
             printerService.cutPart();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void cutFull(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "cutFull", promise, printerService -> {
             printerService.cutFull();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void lineBreak(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "lineBreak", promise, printerService -> {
             printerService.lineBreak();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void print(String address, String text, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "print", promise, printerService -> {
             printerService.print(text);
-            promise.resolve(true);
-        } catch (UnsupportedEncodingException e) {
-            promise.reject(e);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void printLn(String address, String text, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "printLn", promise, printerService -> {
             printerService.printLn(text);
-            promise.resolve(true);
-        } catch (UnsupportedEncodingException e) {
-            promise.reject(e);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void printBarcode(String address, String code, String bc, int width, int height, String pos, String font, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "printBarcode", promise, printerService -> {
             printerService.printBarcode(code, bc, width, height, pos, font);
-            promise.resolve(true);
-        } catch (BarcodeSizeError e) {
-            promise.reject(e);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void printDesign(String address, String text, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "printDesign", promise, printerService -> {
             printerService.printDesign(text);
+            return null;
+        });
+    }
+
+    @ReactMethod
+    public void registerTemplate(String templateId, String design, Promise promise) {
+        try {
+            PrinterService.registerTemplate(templateId, design);
             promise.resolve(true);
-        } catch (IOException e) {
-            promise.reject(e);
         } catch (Throwable e) {
             promise.reject(e);
         }
     }
 
+    @ReactMethod
+    public void unregisterTemplate(String templateId, Promise promise) {
+        PrinterService.unregisterTemplate(templateId);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void printTemplate(String address, String templateId, ReadableMap values, Promise promise) {
+        Map<String, String> templateValues = toStringMap(values);
+        submitJob(address, "printTemplate", promise, printerService -> {
+            printerService.printTemplate(templateId, templateValues);
+            return null;
+        });
+    }
+
     @ReactMethod
     public void printImage(String address, String filePath, Promise promise) {
-        try { 
-            PrinterService printerService = printerServices.get(address);
-            if (printerService.timerId != null) {
-                EscPosHelper.clearTimeout(printerService.timerId);
+        submitJob(address, "printImage", promise, printerService -> {
+            printerService.printImage(filePath);
+            return null;
+        });
+    }
+
+    /**
+     * Options: widthOffset (scale the image down to printing width minus the
+     * offset) and dither (one of the DITHER_* constants).
+     */
+    @ReactMethod
+    public void printImageWithOptions(String address, String filePath, ReadableMap options, Promise promise) {
+        submitJob(address, "printImageWithOptions", promise, printerService -> {
+            Ditherer.Mode ditherMode = Ditherer.Mode.THRESHOLD;
+            if (options != null && options.hasKey("dither") && !options.isNull("dither")) {
+                ditherMode = Ditherer.Mode.parse(options.getString("dither"));
+            }
+            if (options != null && options.hasKey("widthOffset") && !options.isNull("widthOffset")) {
+                printerService.printImage(filePath, options.getInt("widthOffset"), ditherMode);
+            } else {
+                printerService.printImage(filePath, ditherMode);
             }
+            return null;
+        });
+    }
 
-            printerService.printImage(filePath);
-            promise.resolve(true);
-        } catch (IOException e) {
-            promise.reject(e);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+    /**
+     * Stores an image in the printer's memory under key. Options: target (one
+     * of the LOGO_TARGET_* constants, NV by default) and dither. Resolves to
+     * whether the image had to be uploaded.
+     */
+    @ReactMethod
+    public void storeLogo(String address, String key, String filePath, ReadableMap options, Promise promise) {
+        submitJob(address, "storeLogo", promise, printerService -> {
+            LogoRegistry.Target target = LogoRegistry.Target.NV;
+            Ditherer.Mode ditherMode = Ditherer.Mode.THRESHOLD;
+            if (options != null && options.hasKey("target") && !options.isNull("target")) {
+                switch (options.getString("target")) {
+                    case LOGO_TARGET_DOWNLOAD:
+                        target = LogoRegistry.Target.DOWNLOAD;
+                        break;
+                    case LOGO_TARGET_LEGACY_NV:
+                        target = LogoRegistry.Target.LEGACY_NV;
+                        break;
+                    case LOGO_TARGET_NV:
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown logo target: " + options.getString("target"));
+                }
+            }
+            if (options != null && options.hasKey("dither") && !options.isNull("dither")) {
+                ditherMode = Ditherer.Mode.parse(options.getString("dither"));
+            }
+            return printerService.storeLogo(key, filePath, target, ditherMode);
+        });
+    }
+
+    @ReactMethod
+    public void printLogo(String address, String key, Promise promise) {
+        submitJob(address, "printLogo", promise, printerService -> {
+            printerService.printLogo(key);
+            return null;
+        });
+    }
+
+    @ReactMethod
+    public void deleteLogo(String address, String key, Promise promise) {
+        submitJob(address, "deleteLogo", promise, printerService -> {
+            printerService.deleteLogo(key);
+            return null;
+        });
     }
 
     // @ReactMethod
@@ -222,65 +334,347 @@ public class EscPosModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void printQRCode(String address, String value, int size, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "printQRCode", promise, printerService -> {
             printerService.printQRCode(value, size);
-            promise.resolve(true);
-        } catch (QRCodeException e) {
-            promise.reject(e);
-        }
+            return null;
+        });
+    }
+
+    /**
+     * Options: moduleSize (dots per module, 1-16) or size (width in dots),
+     * and errorCorrection (one of the QR_ERROR_CORRECTION_* constants).
+     */
+    @ReactMethod
+    public void printQRCodeWithOptions(String address, String value, ReadableMap options, Promise promise) {
+        submitJob(address, "printQRCodeWithOptions", promise, printerService -> {
+            ErrorCorrectionLevel errorCorrection = null;
+            if (options != null && options.hasKey("errorCorrection") && !options.isNull("errorCorrection")) {
+                errorCorrection = ErrorCorrectionLevel.valueOf(options.getString("errorCorrection"));
+            }
+            if (options != null && options.hasKey("moduleSize") && !options.isNull("moduleSize")) {
+                printerService.printQRCodeWithModuleSize(value, options.getInt("moduleSize"), errorCorrection);
+            } else {
+                int size = options != null && options.hasKey("size") && !options.isNull("size")
+                        ? options.getInt("size") : PrinterService.DEFAULT_QR_CODE_SIZE;
+                printerService.printQRCode(value, size, errorCorrection);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Options: moduleWidth (2-8 dots), rowHeight (2-8 module widths) and
+     * errorCorrection (level 0-8).
+     */
+    @ReactMethod
+    public void printPDF417(String address, String data, ReadableMap options, Promise promise) {
+        submitJob(address, "printPDF417", promise, printerService -> {
+            printerService.printPDF417(data,
+                    getInt(options, "moduleWidth", PrinterService.DEFAULT_PDF417_MODULE_WIDTH),
+                    getInt(options, "rowHeight", PrinterService.DEFAULT_PDF417_ROW_HEIGHT),
+                    getInt(options, "errorCorrection", PrinterService.DEFAULT_PDF417_ERROR_CORRECTION));
+            return null;
+        });
+    }
+
+    /**
+     * Options: moduleSize (2-16 dots).
+     */
+    @ReactMethod
+    public void printDataMatrix(String address, String data, ReadableMap options, Promise promise) {
+        submitJob(address, "printDataMatrix", promise, printerService -> {
+            printerService.printDataMatrix(data,
+                    getInt(options, "moduleSize", PrinterService.DEFAULT_DATA_MATRIX_MODULE_SIZE));
+            return null;
+        });
+    }
+
+    /**
+     * Options: mode (2-6).
+     */
+    @ReactMethod
+    public void printMaxiCode(String address, String data, ReadableMap options, Promise promise) {
+        submitJob(address, "printMaxiCode", promise, printerService -> {
+            printerService.printMaxiCode(data, getInt(options, "mode", PrinterService.DEFAULT_MAXICODE_MODE));
+            return null;
+        });
     }
 
     @ReactMethod
     public void printSample(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "printSample", promise, printerService -> {
             printerService.printSample();
-            promise.resolve(true);
-        } catch (IOException e) {
-            promise.reject(e);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void write(String address, byte[] command, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "write", promise, printerService -> {
             printerService.write(command);
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void setCharCode(String address, String code, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        runSetting(address, promise, true, printerService -> {
             printerService.setCharCode(code);
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
+    }
+
+    /**
+     * Sets the code page text is encoded in, one of the CODE_PAGE_* constants.
+     * GBK by default.
+     */
+    @ReactMethod
+    public void setCodePage(String address, String codePage, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setCodePage(CodePage.parse(codePage));
+            return null;
+        });
+    }
+
+    /**
+     * Like setCodePage with several single byte code pages, switched between
+     * automatically as the text needs. Earlier pages are preferred.
+     */
+    @ReactMethod
+    public void setCodePages(String address, ReadableArray codePages, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            CodePage[] pages = new CodePage[codePages.size()];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = CodePage.parse(codePages.getString(i));
+            }
+            printerService.setCodePages(pages);
+            return null;
+        });
+    }
+
+    /**
+     * Prints text the code page(s) cannot encode, like Thai, Arabic or Hebrew,
+     * as small images in line with the rest of the text.
+     *
+     * @param fontPath a font file to draw it with, or null for the system font.
+     */
+    @ReactMethod
+    public void setTextRasterFallback(String address, boolean enabled, String fontPath, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setTextRasterFallback(enabled, fontPath);
+            return null;
+        });
     }
 
     @ReactMethod
     public void setTextDensity(String address, int density, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        runSetting(address, promise, true, printerService -> {
             printerService.setTextDensity(density);
+            return null;
+        });
+    }
+
+    /**
+     * Options: enabled, flushThreshold (bytes, 16 KB by default) and
+     * lingerMs (50 by default). While enabled, printing methods resolve once
+     * their commands are buffered; cuts and flush send them.
+     */
+    @ReactMethod
+    public void setBuffering(String address, ReadableMap options, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setBuffering(options.hasKey("enabled") && options.getBoolean("enabled"),
+                    getInt(options, "flushThreshold", BufferedPrinter.DEFAULT_FLUSH_THRESHOLD),
+                    getInt(options, "lingerMs", (int) BufferedPrinter.DEFAULT_LINGER_MILLIS));
+            return null;
+        });
+    }
+
+    @ReactMethod
+    public void flush(String address, Promise promise) {
+        submitJob(address, "flush", promise, printerService -> {
+            printerService.flush();
+            return null;
+        });
+    }
+
+    /**
+     * Options for Bluetooth printers: chunkSize (bytes per write, 512 by
+     * default), pacingMs (least wait between chunks, 0 by default),
+     * adaptivePacing (wait longer while writes block, true by default) and
+     * xonXoff (false by default).
+     */
+    @ReactMethod
+    public void setFlowControl(String address, ReadableMap options, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            if (!(printerService.getPrinter() instanceof BluetoothPrinter)) {
+                throw new IllegalArgumentException("Flow control is only available for Bluetooth printers");
+            }
+            ((BluetoothPrinter) printerService.getPrinter()).setFlowControl(
+                    getInt(options, "chunkSize", BluetoothPrinter.DEFAULT_CHUNK_SIZE),
+                    getInt(options, "pacingMs", BluetoothPrinter.DEFAULT_PACING_MILLIS),
+                    !options.hasKey("adaptivePacing") || options.getBoolean("adaptivePacing"),
+                    options.hasKey("xonXoff") && options.getBoolean("xonXoff"));
+            return null;
+        });
+    }
+
+    /**
+     * Options for network printers: connectTimeoutMs (5 s by default, from
+     * the next reconnect on), writeTimeoutMs (how long the printer may take to
+     * accept a write, 30 s by default) and sendBufferSize (64 KB by default,
+     * from the next reconnect on).
+     */
+    @ReactMethod
+    public void setNetworkOptions(String address, ReadableMap options, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            if (!(printerService.getPrinter() instanceof NioNetworkPrinter)) {
+                throw new IllegalArgumentException("Network options are only available for network printers");
+            }
+            ((NioNetworkPrinter) printerService.getPrinter()).setOptions(
+                    getInt(options, "connectTimeoutMs", NioNetworkPrinter.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                    getInt(options, "writeTimeoutMs", NioNetworkPrinter.DEFAULT_WRITE_TIMEOUT_MILLIS),
+                    getInt(options, "sendBufferSize", NioNetworkPrinter.DEFAULT_SEND_BUFFER_SIZE));
+            return null;
+        });
+    }
+
+    /**
+     * Options: enabled (check the printer can print before each job, true by
+     * default) and maxAgeMs (how old a status may be to be used again, 2 s
+     * by default). Jobs on a printer that can't print are rejected.
+     */
+    @ReactMethod
+    public void setStatusCheck(String address, ReadableMap options, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setStatusCheck(!options.hasKey("enabled") || options.getBoolean("enabled"),
+                    getInt(options, "maxAgeMs", PrinterStatusMonitor.DEFAULT_MAX_AGE_MILLIS));
+            return null;
+        });
+    }
+
+    @ReactMethod
+    public void setAutomaticStatusBack(String address, boolean enabled, Promise promise) {
+        runSetting(address, promise, true, printerService -> {
+            printerService.setAutomaticStatusBack(enabled);
+            return null;
+        });
+    }
+
+    /**
+     * Resolves with the printer's status, at most maxAgeMs old, see
+     * printerStatusChanged in the README.
+     */
+    @ReactMethod
+    public void getStatus(String address, int maxAgeMs, Promise promise) {
+        submitJob(address, "getStatus", promise, false, printerService -> {
+            PrinterStatus status = printerService.getStatus(maxAgeMs);
+            if (status == null) {
+                throw new IllegalStateException("Printer does not report its status");
+            }
+            return toStatusMap(address, status);
+        });
+    }
+
+    @ReactMethod
+    public void setStreamChunkSize(String address, int streamChunkSize, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setStreamChunkSize(streamChunkSize);
+            return null;
+        });
+    }
+
+    @ReactMethod
+    public void setImageMode(String address, String imageMode, int rasterTileHeight, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            PrinterService.ImageMode mode;
+
+            switch (imageMode) {
+                case IMAGE_MODE_RASTER:
+                    mode = PrinterService.ImageMode.RASTER;
+                    break;
+                case IMAGE_MODE_GRAPHICS:
+                    mode = PrinterService.ImageMode.GRAPHICS;
+                    break;
+                case IMAGE_MODE_BIT_IMAGE:
+                default:
+                    mode = PrinterService.ImageMode.BIT_IMAGE;
+            }
+            printerService.setImageMode(mode);
+            printerService.setRasterTileHeight(rasterTileHeight > 0 ? rasterTileHeight : PrinterService.DEFAULT_RASTER_TILE_HEIGHT);
+            return null;
+        });
+    }
+
+    /**
+     * Native QR codes (GS ( k) are sent as a few bytes of data, use
+     * QR_CODE_MODE_RASTER for printers that do not support them.
+     */
+    @ReactMethod
+    public void setQRCodeMode(String address, String qrCodeMode, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setQRCodeMode(QR_CODE_MODE_RASTER.equals(qrCodeMode)
+                    ? PrinterService.SymbolMode.RASTER : PrinterService.SymbolMode.NATIVE);
+            return null;
+        });
+    }
+
+    /**
+     * Same as setQRCodeMode, for PDF417, DataMatrix and MaxiCode. MaxiCode
+     * cannot be printed in SYMBOL_MODE_RASTER.
+     */
+    @ReactMethod
+    public void setSymbolMode(String address, String symbolMode, Promise promise) {
+        runSetting(address, promise, printerService -> {
+            printerService.setSymbolMode(SYMBOL_MODE_RASTER.equals(symbolMode)
+                    ? PrinterService.SymbolMode.RASTER : PrinterService.SymbolMode.NATIVE);
+            return null;
+        });
+    }
+
+    /**
+     * Options: maxBytes (memory tier size), diskCache (keep a copy in the app
+     * cache directory) and maxDiskBytes.
+     */
+    @ReactMethod
+    public void setImageCacheOptions(ReadableMap options, Promise promise) {
+        try {
+            ImageCache imageCache = ImageCache.getInstance();
+            if (options.hasKey("maxBytes")) {
+                imageCache.setMaxBytes(options.getInt("maxBytes"));
+            }
+            if (options.hasKey("diskCache")) {
+                long maxDiskBytes = options.hasKey("maxDiskBytes") ? (long) options.getDouble("maxDiskBytes") : 0;
+                imageCache.setDiskCache(options.getBoolean("diskCache")
+                        ? new File(reactContext.getCacheDir(), IMAGE_CACHE_DIRECTORY) : null, maxDiskBytes);
+            }
             promise.resolve(true);
         } catch (Throwable e) {
             promise.reject(e);
         }
     }
 
+    @ReactMethod
+    public void getImageCacheStats(Promise promise) {
+        ImageCache imageCache = ImageCache.getInstance();
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("hits", imageCache.getHitCount());
+        stats.putInt("diskHits", imageCache.getDiskHitCount());
+        stats.putInt("misses", imageCache.getMissCount());
+        stats.putInt("evictions", imageCache.getEvictionCount());
+        stats.putInt("size", imageCache.getSize());
+        stats.putInt("maxSize", imageCache.getMaxSize());
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void clearImageCache(Promise promise) {
+        ImageCache.getInstance().clear();
+        promise.resolve(true);
+    }
+
     @ReactMethod
     public void setPrintingSize(String address, String printingSize, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        runSetting(address, promise, printerService -> {
             int charsOnLine;
             int printingWidth;
 
@@ -300,21 +694,15 @@ public class EscPosModule extends ReactContextBaseJavaModule {
             }
             printerService.setCharsOnLine(charsOnLine);
             printerService.setPrintingWidth(printingWidth);
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
-            
+            return null;
+        });
     }
 
     public void beep(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "beep", promise, printerService -> {
             printerService.beep();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     // @ReactMethod
@@ -323,24 +711,18 @@ public class EscPosModule extends ReactContextBaseJavaModule {
     // }
 
     public void kickCashDrawerPin2(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "kickCashDrawerPin2", promise, printerService -> {
             printerService.kickCashDrawerPin2();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     @ReactMethod
     public void kickCashDrawerPin5(String address, Promise promise) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+        submitJob(address, "kickCashDrawerPin5", promise, printerService -> {
             printerService.kickCashDrawerPin5();
-            promise.resolve(true);
-        } catch (Throwable e) {
-            promise.reject(e);
-        }
+            return null;
+        });
     }
 
     // @ReactMethod
@@ -373,21 +755,33 @@ public class EscPosModule extends ReactContextBaseJavaModule {
     //     }
     // }
 
+    /**
+     * Options: probeIntervalMs (how often idle connections are sent a status
+     * request, 30 s by default, 0 to not check), idleTimeoutMs (how long
+     * connections stay open without jobs, 0 by default for until disconnect)
+     * and maxReconnectAttempts (8 by default).
+     */
+    @ReactMethod
+    public void setConnectionOptions(ReadableMap options, Promise promise) {
+        try {
+            connectionManager.setOptions(
+                    getInt(options, "probeIntervalMs", (int) ConnectionManager.DEFAULT_PROBE_INTERVAL_MILLIS),
+                    getInt(options, "idleTimeoutMs", (int) ConnectionManager.DEFAULT_IDLE_TIMEOUT_MILLIS),
+                    getInt(options, "maxReconnectAttempts", ConnectionManager.DEFAULT_MAX_RECONNECT_ATTEMPTS));
+            promise.resolve(true);
+        } catch (Throwable e) {
+            promise.reject(e);
+        }
+    }
+
     @ReactMethod
     public void disconnect(final String address, final Promise promise) {
         try {
-            PrinterService printerService = printerServices.get(address);    
-            if (Objects.isNull(printerService)) {
+            if (Objects.isNull(connectionManager.get(address))) {
                 throw new PrinterNotFoundException(ERROR_PRINTER_CONNECTION);
             }
-            printerService.timerId = EscPosHelper.setTimeout(() -> {
-                try {
-                    printerService.close();
-                    printerServices.remove(address);
-                } catch (IOException e) {
-                    promise.reject(e);
-                }
-             }, DISCONNECT_TIMEOUT);
+            // Closed after the jobs still queued, unless printing again before
+            connectionManager.disconnect(address, DISCONNECT_TIMEOUT);
             promise.resolve(true);
         } catch(PrinterNotFoundException e) {
             promise.reject(e);
@@ -396,17 +790,181 @@ public class EscPosModule extends ReactContextBaseJavaModule {
         }
     }
 
-    private void disconnectOnError(final String address) {
-        try {
-            PrinterService printerService = printerServices.get(address);
+    /**
+     * Tags the jobs queued for address from now on, until it is called again,
+     * so they can be told apart in the job events. null stops tagging.
+     */
+    @ReactMethod
+    public void setJobTag(String address, String tag, Promise promise) {
+        if (tag == null) {
+            jobTags.remove(address);
+        } else {
+            jobTags.put(address, tag);
+        }
+        promise.resolve(true);
+    }
 
-            if (Objects.nonNull(printerService)) {
-                printerService.close();
-                printerServices.remove(address);
+    /**
+     * Queues job on the printer's writer thread. The promise settles once it
+     * has run, JS is told of its progress by jobQueued, jobStarted,
+     * jobCompleted and jobFailed events, which carry the job's id and the
+     * tag set by {@link #setJobTag}.
+     */
+    private void submitJob(String address, String name, Promise promise, PrinterJob job) {
+        submitJob(address, name, promise, true, job);
+    }
+
+    /**
+     * @param checkStatus whether the job is only run on a printer that can print it.
+     */
+    private void submitJob(String address, String name, Promise promise, boolean checkStatus, PrinterJob job) {
+        ConnectionManager.Connection connection = connectionManager.get(address);
+        if (connection == null) {
+            promise.reject(new PrinterNotFoundException(ERROR_PRINTER_CONNECTION));
+            return;
+        }
+        // Printing again, stay connected
+        connectionManager.touch(connection);
+        PrinterService printerService = connection.getPrinterService();
+        connection.getQueue().submit(name, jobTags.get(address), () -> connectionManager.run(connection, () -> {
+            if (checkStatus) {
+                printerService.checkReady();
             }
-        } catch (IOException e) {
-        } catch (Throwable e) {
+            return job.run(printerService);
+        }), promise);
+    }
+
+    /**
+     * Changes a printer setting on its writer thread, so it applies from the
+     * next queued job on and never during one.
+     */
+    private void runSetting(String address, Promise promise, PrinterJob job) {
+        runSetting(address, promise, false, job);
+    }
+
+    /**
+     * @param sends whether the setting is sent to the printer, which is then opened first if needed.
+     */
+    private void runSetting(String address, Promise promise, boolean sends, PrinterJob job) {
+        ConnectionManager.Connection connection = connectionManager.get(address);
+        if (connection == null) {
+            promise.reject(new PrinterNotFoundException(ERROR_PRINTER_CONNECTION));
+            return;
+        }
+        PrinterService printerService = connection.getPrinterService();
+        if (sends) {
+            connection.getQueue().execute(() -> connectionManager.run(connection, () -> job.run(printerService)),
+                    promise);
+        } else {
+            connection.getQueue().execute(() -> job.run(printerService), promise);
+        }
+    }
+
+    private void emitJobEvent(String eventName, String address, int jobId, String name, String tag,
+            Throwable error) {
+        WritableMap params = Arguments.createMap();
+        params.putInt("jobId", jobId);
+        params.putString("address", address);
+        params.putString("name", name);
+        params.putString("tag", tag);
+        if (error != null) {
+            params.putString("error", String.valueOf(error.getMessage()));
+        }
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+    }
+
+    private final PrintJobQueue.Listener jobListener = new PrintJobQueue.Listener() {
+        @Override
+        public void onJobQueued(String address, int jobId, String name, String tag) {
+            emitJobEvent("jobQueued", address, jobId, name, tag, null);
+        }
+
+        @Override
+        public void onJobStarted(String address, int jobId, String name, String tag) {
+            emitJobEvent("jobStarted", address, jobId, name, tag, null);
+        }
+
+        @Override
+        public void onJobCompleted(String address, int jobId, String name, String tag) {
+            emitJobEvent("jobCompleted", address, jobId, name, tag, null);
+        }
+
+        @Override
+        public void onJobFailed(String address, int jobId, String name, String tag, Throwable error) {
+            emitJobEvent("jobFailed", address, jobId, name, tag, error);
+        }
+    };
+
+    private final ConnectionManager.Listener connectionListener = new ConnectionManager.Listener() {
+        @Override
+        public void onStateChanged(String address, ConnectionManager.State state, int attempt, Throwable error) {
+            WritableMap params = Arguments.createMap();
+            params.putString("address", address);
+            params.putString("state", state.name());
+            params.putInt("attempt", attempt);
+            if (error != null) {
+                params.putString("error", String.valueOf(error.getMessage()));
+            }
+            reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit("connectionStateChanged", params);
+        }
+    };
+
+    private void emitStatusEvent(String address, PrinterStatus status) {
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("printerStatusChanged", toStatusMap(address, status));
+    }
+
+    private static WritableMap toStatusMap(String address, PrinterStatus status) {
+        WritableMap params = Arguments.createMap();
+        params.putString("address", address);
+        params.putBoolean("ready", status.isReady());
+        params.putBoolean("online", status.isOnline());
+        params.putBoolean("coverOpen", status.isCoverOpen());
+        params.putBoolean("paperOut", status.isPaperOut());
+        params.putBoolean("paperNearEnd", status.isPaperNearEnd());
+        params.putBoolean("paperFeeding", status.isPaperFeeding());
+        params.putBoolean("drawerOpen", status.isDrawerOpen());
+        params.putBoolean("cutterError", status.isCutterError());
+        params.putBoolean("unrecoverableError", status.isUnrecoverableError());
+        params.putBoolean("recoverableError", status.isRecoverableError());
+        params.putString("description", status.toString());
+        return params;
+    }
+
+    private static int getInt(ReadableMap options, String key, int defaultValue) {
+        return options != null && options.hasKey(key) && !options.isNull(key) ? options.getInt(key) : defaultValue;
+    }
+
+    private static Map<String, String> toStringMap(ReadableMap values) {
+        Map<String, String> map = new HashMap<>();
+        if (values == null) {
+            return map;
         }
+        ReadableMapKeySetIterator iterator = values.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String key = iterator.nextKey();
+            switch (values.getType(key)) {
+                case String:
+                    map.put(key, values.getString(key));
+                    break;
+                case Number:
+                    double number = values.getDouble(key);
+                    map.put(key, number == Math.rint(number) && !Double.isInfinite(number)
+                            ? String.valueOf((long) number) : String.valueOf(number));
+                    break;
+                case Boolean:
+                    map.put(key, String.valueOf(values.getBoolean(key)));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return map;
+    }
+
+    private void disconnectOnError(final String address) {
+        connectionManager.remove(address);
     }
 
     @SuppressWarnings({"MissingPermission"})
@@ -473,6 +1031,7 @@ public class EscPosModule extends ReactContextBaseJavaModule {
 
                 case BluetoothDevice.ACTION_ACL_DISCONNECTED:
                     bluetoothEvent = BluetoothEvent.DISCONNECTED;
+                    connectionManager.onLinkLost(bluetoothDevice.getAddress());
                     break;
 
                 default:
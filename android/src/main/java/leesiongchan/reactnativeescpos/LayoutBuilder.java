@@ -1,14 +1,11 @@
 package gmrcp.reactnativeescpos;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
+import gmrcp.reactnativeescpos.utils.DisplayWidth;
+
 import static io.github.escposjava.print.Commands.*;
 
 // @ref https://github.com/LeeryBit/esc-pos-android/blob/master/library/src/main/java/com/leerybit/escpos/Ticket.java
@@ -19,6 +16,10 @@ public class LayoutBuilder {
     public static final int CHARS_ON_LINE_58_MM = 32;
     public static final int CHARS_ON_LINE_76_MM = 42;
     public static final int CHARS_ON_LINE_80_MM = 48;
+    private static final String REPEAT_TAG = "{RP:";
+    private static final String MENU_ITEM_SEPARATOR = "{<>}";
+    private static final String TABLE_TAG = "{TABLE:";
+    private static final String TABLE_END_TAG = "{/TABLE}";
     private int charsOnLine = CHARS_ON_LINE_58_MM;
 
     LayoutBuilder() {
@@ -49,38 +50,99 @@ public class LayoutBuilder {
      * ------------------------------------------ *
      * Item         {<>}       Qty  Price  Amount *
      * Pork Rice    {<>}         1  13.80   13.80 *
+     *                                            *
+     * DESIGN 3: Table                            *
+     * {TABLE:*L,3R,7R}                           *
+     * Item {<>} Qty {<>} Amount                  *
+     * Wonton Noodle Soup (Large) {<>} 1 {<>} 9.80 *
+     * {/TABLE}                                   *
      **/
     public String createFromDesign(String text, int charsOnLine) throws IOException {
-        BufferedReader reader = new BufferedReader(new StringReader(text));
-        StringBuilder designText = new StringBuilder();
-        String line;
-
-        while ((line = reader.readLine()) != null) {
-            if (line.matches("---.*")) {
-                designText.append(createDivider(charsOnLine));
-            } else if (line.matches("===.*")) {
-                designText.append(createDivider('=',charsOnLine));
-            } else if (line.contains("{RP:")) {
-                designText.append(duplicateStringSymbol(line));
-            } else if (line.contains("{<>}")) {
-                String[] splitLine = line.split("\\{<>\\}");
-                designText.append(createMenuItem(splitLine[0], splitLine[1], ' ', charsOnLine));
+        StringBuilder designText = new StringBuilder(text.length() + 16);
+        appendFromDesign(text, charsOnLine, designText);
+        return designText.toString();
+    }
+
+    /**
+     * Lays out text like {@link #createFromDesign(String, int)}, appending to
+     * out as it goes. Lines are read in place and padding, dividers and
+     * repeats are appended char by char, so the only allocations are out's own.
+     */
+    public void appendFromDesign(CharSequence text, int charsOnLine, Appendable out) throws IOException {
+        int length = text.length();
+        int start = 0;
+        TableLayout table = null;
+        while (start < length) {
+            // Lines end at \n, \r or \r\n, as with BufferedReader.readLine
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            String tableSpec = getTableSpec(text, start, end);
+            if (tableSpec != null) {
+                table = TableLayout.parse(tableSpec);
+            } else if (isTableEnd(text, start, end)) {
+                table = null;
+            } else if (table != null) {
+                table.appendRow(text, start, end, charsOnLine, out);
             } else {
-                designText.append(line);
-                designText.append("\n");
-                // designText.append(createTextOnLine(line, ' ', TEXT_ALIGNMENT_LEFT, charsOnLine));
+                appendLine(text, start, end, charsOnLine, out);
+            }
+            start = end + 1;
+            if (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+                start++;
             }
         }
+    }
 
-        return designText.toString();
+    private void appendLine(CharSequence text, int start, int end, int charsOnLine, Appendable out)
+            throws IOException {
+        int separator;
+        if (startsWith(text, start, end, "---")) {
+            appendDivider('-', charsOnLine, out);
+        } else if (startsWith(text, start, end, "===")) {
+            appendDivider('=', charsOnLine, out);
+        } else if (indexOf(text, REPEAT_TAG, start, end) >= 0) {
+            appendRepeated(text, start, end, out);
+        } else if ((separator = indexOf(text, MENU_ITEM_SEPARATOR, start, end)) >= 0) {
+            int valueStart = separator + MENU_ITEM_SEPARATOR.length();
+            int valueEnd = indexOf(text, MENU_ITEM_SEPARATOR, valueStart, end);
+            appendMenuItem(text, start, separator, valueStart, valueEnd < 0 ? end : valueEnd, ' ', charsOnLine,
+                    out);
+        } else {
+            out.append(text, start, end);
+            out.append('\n');
+            // designText.append(createTextOnLine(line, ' ', TEXT_ALIGNMENT_LEFT, charsOnLine));
+        }
     }
 
     public String createAccent(String text, char accent) {
         return createAccent(text, accent, charsOnLine);
     }
 
+    /**
+     * @return the column spec of a {TABLE:spec} line starting a table block, else null.
+     */
+    public static String getTableSpec(CharSequence text, int start, int end) {
+        start = skipWhitespace(text, start, end);
+        end = trimWhitespace(text, start, end);
+        if (!startsWith(text, start, end, TABLE_TAG) || text.charAt(end - 1) != '}') {
+            return null;
+        }
+        return text.subSequence(start + TABLE_TAG.length(), end - 1).toString();
+    }
+
+    /**
+     * @return whether text[start, end) is a {/TABLE} line ending a table block.
+     */
+    public static boolean isTableEnd(CharSequence text, int start, int end) {
+        start = skipWhitespace(text, start, end);
+        end = trimWhitespace(text, start, end);
+        return end - start == TABLE_END_TAG.length() && startsWith(text, start, end, TABLE_END_TAG);
+    }
+
     public String createAccent(String text, char accent, int charsOnLine) {
-        if (text.length() - 4 > charsOnLine) {
+        if (DisplayWidth.of(text) - 4 > charsOnLine) {
             accent = ' ';
         }
 
@@ -100,71 +162,136 @@ public class LayoutBuilder {
         return StringUtils.repeat(symbol, charsOnLine) + "\n";
     }
 
+    public void appendDivider(char symbol, int charsOnLine, Appendable out) throws IOException {
+        appendRepeated(symbol, charsOnLine, out);
+        out.append('\n');
+    }
+
     public String createMenuItem(String key, String value, char space) {
         return createMenuItem(key, value, space, charsOnLine);
     }
 
     public String createMenuItem(String key, String value, char space, int charsOnLine) {
-        if (key.length() + value.length() + 2 > charsOnLine) {
-            return createTextOnLine(key + ": " + value, ' ', TEXT_ALIGNMENT_LEFT, charsOnLine);
+        StringBuilder out = new StringBuilder(charsOnLine + 1);
+        try {
+            appendMenuItem(key + MENU_ITEM_SEPARATOR + value, 0, key.length(),
+                    key.length() + MENU_ITEM_SEPARATOR.length(), key.length() + MENU_ITEM_SEPARATOR.length()
+                    + value.length(), space, charsOnLine, out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
         }
+        return out.toString();
+    }
 
-        return StringUtils.rightPad(key, charsOnLine - value.length(), space) + value + "\n";
+    /**
+     * Appends text[keyStart, keyEnd) and text[valueStart, valueEnd) as a menu
+     * item, see {@link #createMenuItem(String, String, char, int)}.
+     */
+    public void appendMenuItem(CharSequence text, int keyStart, int keyEnd, int valueStart, int valueEnd,
+            char space, int charsOnLine, Appendable out) throws IOException {
+        int keyWidth = DisplayWidth.of(text, keyStart, keyEnd);
+        int valueWidth = DisplayWidth.of(text, valueStart, valueEnd);
+        if (keyWidth + valueWidth + 2 > charsOnLine) {
+            String line = text.subSequence(keyStart, keyEnd) + ": " + text.subSequence(valueStart, valueEnd);
+            out.append(createTextOnLine(line, ' ', TEXT_ALIGNMENT_LEFT, charsOnLine));
+            return;
+        }
+
+        out.append(text, keyStart, keyEnd);
+        appendRepeated(space, charsOnLine - valueWidth - keyWidth, out);
+        out.append(text, valueStart, valueEnd);
+        out.append('\n');
     }
 
     public String createTextOnLine(String text, char space, String alignment) {
         return createTextOnLine(text, space, alignment, charsOnLine);
     }
 
+    /**
+     * Pads text to charsOnLine display cells with space, aligned. Longer text
+     * is wrapped at word boundaries and each line is aligned on its own.
+     */
     public String createTextOnLine(String text, char space, String alignment, int charsOnLine) {
-        if (text.length() > charsOnLine) {
-            StringBuilder out = new StringBuilder();
-            int len = text.length();
-            for (int i = 0; i <= len / charsOnLine; i++) {
-                String str = text.substring(i * charsOnLine, Math.min((i + 1) * charsOnLine, len));
-                if (!str.trim().isEmpty()) {
-                    out.append(createTextOnLine(str, space, alignment));
-                }
-            }
-
-            return out.toString();
+        char align = TEXT_ALIGNMENT_RIGHT.equals(alignment) ? TableLayout.RIGHT
+                : TEXT_ALIGNMENT_CENTER.equals(alignment) ? TableLayout.CENTER : TableLayout.LEFT;
+        StringBuilder out = new StringBuilder(charsOnLine + 1);
+        try {
+            TableLayout.appendWrapped(text, charsOnLine, align, space, out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
         }
+        return out.toString();
+    }
 
-        switch (alignment) {
-            case TEXT_ALIGNMENT_RIGHT:
-                return StringUtils.leftPad(text, charsOnLine, space) + "\n";
+    public String duplicateStringSymbol(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        try {
+            appendRepeated(text, 0, text.length(), out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        return out.toString();
+    }
 
-            case TEXT_ALIGNMENT_CENTER:
-                return StringUtils.center(text, charsOnLine, space) + "\n";
+    /**
+     * Appends text[start, end) and a line feed, with every {RP:n:s} replaced
+     * by s repeated n times. The line is read once, left to right.
+     */
+    public void appendRepeated(CharSequence text, int start, int end, Appendable out) throws IOException {
+        int pos = start;
+        int tag;
+        while ((tag = indexOf(text, REPEAT_TAG, pos, end)) >= 0) {
+            int countStart = tag + REPEAT_TAG.length();
+            int countEnd = countStart;
+            int count = 0;
+            while (countEnd < end && Character.isDigit(text.charAt(countEnd))) {
+                count = count * 10 + Character.digit(text.charAt(countEnd), 10);
+                countEnd++;
+            }
+            int close = countEnd < end && text.charAt(countEnd) == ':' ? indexOf(text, "}", countEnd + 1, end) : -1;
+            if (countEnd == countStart || close < 0) {
+                // Not a repeat tag, keep it as it is
+                out.append(text, pos, countStart);
+                pos = countStart;
+                continue;
+            }
 
-            default:
-                return StringUtils.rightPad(text, charsOnLine, space) + "\n";
+            out.append(text, pos, tag);
+            for (int i = 0; i < count; i++) {
+                out.append(text, countEnd + 1, close);
+            }
+            pos = close + 1;
         }
+        out.append(text, pos, end);
+        out.append('\n');
     }
 
-    public String duplicateStringSymbol(String text) {
-        String repeatTag = "{RP:";
-        String regex = "\\"+repeatTag+"\\d+:.*?\\}";
-        Matcher m = Pattern.compile(regex).matcher(text);
-        int tagCount = 0;
-        while(m.find()) {
-            tagCount++;
+    private static void appendRepeated(char c, int count, Appendable out) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
         }
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        return indexOf(text, prefix, start, Math.min(end, start + prefix.length())) == start;
+    }
+
+    private static int indexOf(CharSequence text, String s, int start, int end) {
+        return TableLayout.indexOf(text, s, start, end);
+    }
 
-        for(int x = 0; x < tagCount; x++) {
-            String symbol = "", count = "0", repeatedSymbol = "";
-            int rpIndex = text.indexOf(repeatTag);
-            String workingString = text.substring(rpIndex+(repeatTag.length()), text.indexOf('}'));
-            int separatorIdx = workingString.indexOf(':');
-            count = workingString.substring(0,separatorIdx);
-            symbol = workingString.substring(separatorIdx+1, workingString.length());
-            repeatedSymbol = StringUtils.repeat(symbol, Integer.parseInt(count));
-
-            String replaceRepeatTag = repeatTag + workingString + "}";
-            text = text.replaceFirst(Pattern.quote(text.substring(text.indexOf(replaceRepeatTag),text.indexOf(replaceRepeatTag)+replaceRepeatTag.length())), Matcher.quoteReplacement(repeatedSymbol));
+    private static int skipWhitespace(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
         }
+        return start;
+    }
 
-        return text + "\n";
+    private static int trimWhitespace(CharSequence text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
     }
 
     public void setCharsOnLine(int charsOnLine) {
@@ -0,0 +1,380 @@
+package gmrcp.reactnativeescpos;
+
+import android.util.Log;
+
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Network printer on a non-blocking SocketChannel. One I/O thread, shared by
+ * all network printers, connects, writes and reads for them, so many LAN
+ * printers don't need a blocked thread each. Callers still see blocking
+ * calls: open and write wait for the I/O thread, at most connectTimeout and
+ * writeTimeout, and fail instead of hanging on a printer that went away or
+ * stopped reading. A host name is looked up by open on the calling thread,
+ * before and not limited by connectTimeout; pass an IP address to avoid it.
+ */
+public class NioNetworkPrinter implements ReadablePrinter {
+    private static final String LOG_TAG = NioNetworkPrinter.class.getSimpleName();
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_WRITE_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_SEND_BUFFER_SIZE = 64 * 1024;
+    // Replies not read yet beyond this are dropped
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
+
+    private final String host;
+    private final int port;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+    private volatile int sendBufferSize = DEFAULT_SEND_BUFFER_SIZE;
+    // Guarded by this, shared with the I/O thread
+    private SocketChannel channel;
+    private boolean connected = false;
+    private IOException failure;
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+    private final byte[] received = new byte[RECEIVE_BUFFER_SIZE];
+    private int receivedCount = 0;
+
+    public NioNetworkPrinter(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param connectTimeoutMillis how long opening may take, from the next open on.
+     * @param writeTimeoutMillis   how long the printer may take to accept a write.
+     * @param sendBufferSize       the socket's send buffer, from the next open on.
+     */
+    public void setOptions(int connectTimeoutMillis, int writeTimeoutMillis, int sendBufferSize) {
+        if (connectTimeoutMillis <= 0 || writeTimeoutMillis <= 0 || sendBufferSize <= 0) {
+            throw new IllegalArgumentException("Network timeouts and send buffer size must be positive");
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    @Override
+    public void open() throws IOException {
+        close();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException("Could not resolve printer host " + host);
+        }
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSendBufferSize(sendBufferSize);
+            channel.socket().setKeepAlive(true);
+            final boolean connectedNow = channel.connect(address);
+            synchronized (this) {
+                this.channel = channel;
+                connected = connectedNow;
+                failure = null;
+                pending.clear();
+                receivedCount = 0;
+            }
+            IoThread.INSTANCE.execute(() -> IoThread.INSTANCE.register(this, channel,
+                    connectedNow ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT));
+
+            synchronized (this) {
+                awaitUntil(() -> connected, connectTimeoutMillis);
+                if (failure != null) {
+                    throw failure;
+                }
+                if (!connected) {
+                    throw new SocketTimeoutException("Connecting to " + host + ":" + port + " timed out");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(channel, e instanceof IOException ? (IOException) e : new IOException(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Queues command for the I/O thread and waits until it is written. The
+     * array is not copied, it is done with when this returns.
+     */
+    @Override
+    public void write(byte[] command) {
+        ByteBuffer buffer = ByteBuffer.wrap(command);
+        SocketChannel channel;
+        synchronized (this) {
+            checkOpen();
+            channel = this.channel;
+            pending.add(buffer);
+        }
+        IoThread.INSTANCE.execute(() -> IoThread.INSTANCE.setWriting(channel, true));
+
+        synchronized (this) {
+            awaitUntil(() -> !buffer.hasRemaining(), writeTimeoutMillis);
+            if (buffer.hasRemaining()) {
+                if (failure == null) {
+                    fail(channel, new SocketTimeoutException("Printer " + host + ":" + port
+                            + " did not take a write in " + writeTimeoutMillis + " ms"));
+                }
+                throw new PrinterWriteException("Could not write to printer " + host + ":" + port, failure);
+            }
+        }
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length, int timeoutMillis) throws IOException {
+        awaitUntil(() -> receivedCount > 0, timeoutMillis);
+        if (receivedCount == 0) {
+            if (failure != null) {
+                throw failure;
+            }
+            return 0;
+        }
+        int n = Math.min(length, receivedCount);
+        System.arraycopy(received, 0, buffer, offset, n);
+        System.arraycopy(received, n, received, 0, receivedCount - n);
+        receivedCount -= n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        SocketChannel channel;
+        synchronized (this) {
+            channel = this.channel;
+            this.channel = null;
+            connected = false;
+            if (channel != null && failure == null) {
+                failure = new ClosedChannelException();
+            }
+            pending.clear();
+            notifyAll();
+        }
+        if (channel != null) {
+            // Its key is cancelled with it
+            channel.close();
+            IoThread.INSTANCE.selector.wakeup();
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Waits, holding this, until condition is met, the connection failed or
+     * timeoutMillis passed.
+     */
+    private void awaitUntil(Condition condition, int timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        try {
+            while (!condition.isMet() && failure == null) {
+                long remaining = (deadline - System.nanoTime()) / 1000000L;
+                if (remaining <= 0) {
+                    return;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOpen() {
+        if (failure != null) {
+            throw new PrinterWriteException("Could not write to printer " + host + ":" + port, failure);
+        }
+        if (!connected) {
+            throw new PrinterWriteException("Printer " + host + ":" + port + " is not open");
+        }
+    }
+
+    /**
+     * Marks the connection on channel failed, if it is still the current one,
+     * and closes channel.
+     */
+    private void fail(SocketChannel channel, IOException error) {
+        synchronized (this) {
+            if (this.channel == channel) {
+                failure = error;
+                connected = false;
+                notifyAll();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Failed already
+        }
+    }
+
+    // Called on the I/O thread
+
+    private void onConnectable(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            channel.finishConnect();
+        } catch (IOException e) {
+            fail(channel, e);
+            return;
+        }
+        synchronized (this) {
+            if (this.channel != channel) {
+                return;
+            }
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ | (pending.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+            notifyAll();
+        }
+    }
+
+    private void onWritable(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            synchronized (this) {
+                ByteBuffer buffer;
+                while ((buffer = pending.peek()) != null) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        // The send buffer is full, wait for the printer to read
+                        return;
+                    }
+                    pending.poll();
+                    notifyAll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            fail(channel, e);
+        }
+    }
+
+    private void onReadable(SelectionKey key, ByteBuffer scratch) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            scratch.clear();
+            int n = channel.read(scratch);
+            if (n < 0) {
+                fail(channel, new EOFException("Printer " + host + ":" + port + " closed the connection"));
+                return;
+            }
+            scratch.flip();
+            synchronized (this) {
+                int keep = Math.min(scratch.remaining(), received.length - receivedCount);
+                scratch.get(received, receivedCount, keep);
+                receivedCount += keep;
+                notifyAll();
+            }
+        } catch (IOException e) {
+            fail(channel, e);
+        }
+    }
+
+    /**
+     * The thread all network printers do their I/O on, started with the first.
+     */
+    private static final class IoThread implements Runnable {
+        static final IoThread INSTANCE = new IoThread();
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private IoThread() {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open a selector", e);
+            }
+            Thread thread = new Thread(this, "EscPos network I/O");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Runs task on the I/O thread. Keys are only changed there, changing
+         * them while the thread selects could block.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(NioNetworkPrinter printer, SocketChannel channel, int ops) {
+            try {
+                channel.register(selector, ops, printer);
+            } catch (ClosedChannelException e) {
+                // Closed before it got here
+            }
+        }
+
+        void setWriting(SocketChannel channel, boolean writing) {
+            SelectionKey key = channel.keyFor(selector);
+            if (key == null) {
+                return;
+            }
+            try {
+                int ops = key.interestOps();
+                if ((ops & SelectionKey.OP_CONNECT) == 0) {
+                    key.interestOps(writing ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+                }
+            } catch (CancelledKeyException e) {
+                // Closed on another thread, the write fails with it
+            }
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer scratch = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    continue;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // Keep the thread alive for the other printers
+                        Log.w(LOG_TAG, "Network I/O task failed", e);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioNetworkPrinter printer = (NioNetworkPrinter) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            printer.onConnectable(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            printer.onWritable(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            printer.onReadable(key, scratch);
+                        }
+                    } catch (RuntimeException e) {
+                        // A key cancelled by close on another thread
+                        printer.fail((SocketChannel) key.channel(), new IOException(e));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package gmrcp.reactnativeescpos;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the jobs of one printer in order on its own writer thread, so slow
+ * printers neither block the React Native module thread nor each other.
+ * A job's promise settles when the job has run, i.e. once its bytes have been
+ * written, and the listener is told when jobs are queued, start, complete or
+ * fail, with the tag the job was submitted with.
+ */
+public class PrintJobQueue {
+    public interface Job {
+        /**
+         * @return what the promise is resolved with, null for true.
+         */
+        Object run() throws Exception;
+    }
+
+    public interface Listener {
+        void onJobQueued(String address, int jobId, String name, String tag);
+
+        void onJobStarted(String address, int jobId, String name, String tag);
+
+        void onJobCompleted(String address, int jobId, String name, String tag);
+
+        void onJobFailed(String address, int jobId, String name, String tag, Throwable error);
+    }
+
+    private static final AtomicInteger nextJobId = new AtomicInteger(1);
+
+    private final String address;
+    private final Listener listener;
+    private final ExecutorService executor;
+
+    public PrintJobQueue(final String address, Listener listener) {
+        this.address = address;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EscPos " + address);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Queues job after the ones already queued.
+     *
+     * @param name    what the job does, passed to the listener, e.g. the method name.
+     * @param tag     passed to the listener, so the caller can tell its jobs apart; may be null.
+     * @param promise settled with the job's result or error once it has run.
+     * @return the job's id, unique across printers.
+     */
+    public int submit(final String name, final String tag, final Job job, final Promise promise) {
+        final int jobId = nextJobId.getAndIncrement();
+        listener.onJobQueued(address, jobId, name, tag);
+        try {
+            executor.execute(() -> {
+                listener.onJobStarted(address, jobId, name, tag);
+                Object result;
+                try {
+                    result = job.run();
+                } catch (Throwable e) {
+                    listener.onJobFailed(address, jobId, name, tag, e);
+                    promise.reject(e);
+                    return;
+                }
+                listener.onJobCompleted(address, jobId, name, tag);
+                promise.resolve(result != null ? result : true);
+            });
+        } catch (RejectedExecutionException e) {
+            listener.onJobFailed(address, jobId, name, tag, e);
+            promise.reject(e);
+        }
+        return jobId;
+    }
+
+    /**
+     * Runs a settings change on the writer thread in order with the jobs,
+     * without job events.
+     */
+    public void execute(final Job job, final Promise promise) {
+        try {
+            executor.execute(() -> {
+                try {
+                    Object result = job.run();
+                    promise.resolve(result != null ? result : true);
+                } catch (Throwable e) {
+                    promise.reject(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            promise.reject(e);
+        }
+    }
+
+    /**
+     * Runs task on the writer thread after the queued jobs, without events.
+     *
+     * @return false when the queue has been shut down.
+     */
+    public boolean post(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lets the queued jobs finish, then stops the writer thread. Later jobs are rejected.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
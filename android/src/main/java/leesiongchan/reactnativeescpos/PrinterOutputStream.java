@@ -0,0 +1,67 @@
+package gmrcp.reactnativeescpos;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * OutputStream that hands bytes to a {@link PrinterService} in chunks of at
+ * most chunkSize bytes as soon as they are produced, so a job starts printing
+ * while the rest is still being rendered and memory stays bounded.
+ */
+public class PrinterOutputStream extends OutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final PrinterService printerService;
+    private final byte[] buffer;
+    private int count = 0;
+
+    public PrinterOutputStream(PrinterService printerService) {
+        this(printerService, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PrinterOutputStream(PrinterService printerService, int chunkSize) {
+        this.printerService = printerService;
+        this.buffer = new byte[Math.max(chunkSize, 1)];
+    }
+
+    @Override
+    public void write(int b) {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (count > 0) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void flushBuffer() {
+        // A full buffer goes out as is, printers write synchronously and
+        // don't keep a reference to the array.
+        printerService.write(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+        count = 0;
+    }
+}
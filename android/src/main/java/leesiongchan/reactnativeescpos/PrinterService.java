@@ -1,44 +1,89 @@
 package gmrcp.reactnativeescpos;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageDecoder;
+import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
+import android.util.LruCache;
 
-import com.facebook.react.bridge.ReactApplicationContext;
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.Writer;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.datamatrix.DataMatrixWriter;
+import com.google.zxing.pdf417.PDF417Writer;
 import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import io.github.escposjava.print.Printer;
 import io.github.escposjava.print.exceptions.BarcodeSizeError;
 import io.github.escposjava.print.exceptions.QRCodeException;
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
 import java.lang.Math;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
+import gmrcp.reactnativeescpos.command.CodePage;
 import gmrcp.reactnativeescpos.command.PrinterCommand;
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+import gmrcp.reactnativeescpos.command.Symbology;
+import gmrcp.reactnativeescpos.design.DesignLine;
+import gmrcp.reactnativeescpos.design.DesignTemplate;
+import gmrcp.reactnativeescpos.design.DesignTemplateCache;
 import gmrcp.reactnativeescpos.helpers.EscPosHelper;
+import gmrcp.reactnativeescpos.helpers.ImageCache;
+import gmrcp.reactnativeescpos.helpers.ImageLoader;
+import gmrcp.reactnativeescpos.helpers.LogoRegistry;
+import gmrcp.reactnativeescpos.helpers.TextEncoder;
+import gmrcp.reactnativeescpos.helpers.TextRasterizer;
 import gmrcp.reactnativeescpos.utils.BitMatrixUtils;
+import gmrcp.reactnativeescpos.utils.Bitplane;
+import gmrcp.reactnativeescpos.utils.Ditherer;
 import static io.github.escposjava.print.Commands.*;
 
 public class PrinterService {
-    public Object timerId = null;
+    /**
+     * How images are sent: ESC * 24-dot bands, GS v 0 raster blocks or
+     * GS ( L graphics. Printers differ in which one they print fastest.
+     */
+    public enum ImageMode {
+        BIT_IMAGE, RASTER, GRAPHICS
+    }
+
+    /**
+     * How QR codes and other 2D symbols are printed: encoded by the printer
+     * from the data (GS ( k), or encoded here and sent as an image for
+     * printers without GS ( k.
+     */
+    public enum SymbolMode {
+        NATIVE, RASTER
+    }
+
     public static final int PRINTING_WIDTH_58_MM = 384;
     public static final int PRINTING_WIDTH_76_MM = 450;
     public static final int PRINTING_WIDTH_80_MM = 576;
     private static final String CARRIAGE_RETURN = System.getProperty("line.separator");
     private LayoutBuilder layoutBuilder = new LayoutBuilder();
-    private final int DEFAULT_QR_CODE_SIZE = 200;
+    public static final int DEFAULT_QR_CODE_SIZE = 200;
     private final int DEFAULT_IMG_MAX_HEIGHT = 200;
     private final int DEFAULT_IMG_WIDTH_OFFSET = 0;
+    public static final int DEFAULT_RASTER_TILE_HEIGHT = 255;
+    private static final int QR_CODE_QUIET_ZONE = 4;
+    private static final int QR_CODE_MAX_MODULE_SIZE = 16;
+    private static final int QR_CODE_CACHE_SIZE = 32;
+    public static final int DEFAULT_PDF417_MODULE_WIDTH = 3;
+    public static final int DEFAULT_PDF417_ROW_HEIGHT = 3;
+    public static final int DEFAULT_PDF417_ERROR_CORRECTION = 1;
+    public static final int DEFAULT_DATA_MATRIX_MODULE_SIZE = 6;
+    public static final int DEFAULT_MAXICODE_MODE = 2;
+    // ZXing draws PDF417 rows this many modules high.
+    private static final int PDF417_RASTER_ROW_HEIGHT = 4;
 
     private final int DEFAULT_BAR_CODE_HEIGHT = 120;
     private final int DEFAULT_BAR_CODE_WIDTH = 3;
@@ -46,33 +91,70 @@ public class PrinterService {
     private final int DEFAULT_BAR_CODE_FONT = 0;
     private final int DEFAULT_BAR_CODE_POSITION = 2;
 
+    private static final byte[] ESC_M = new byte[] { 0x1b, 'M', 0x00 };
+    private static final byte[] TXT_NORMAL_NEW = new byte[] { 0x1d, '!', 0x00 };
+    private static final byte[] TXT_4SQUARE_NEW = new byte[] { 0x1d, '!', 0x11 };
+    private static final byte[] TXT_2HEIGHT_NEW = new byte[] { 0x1d, '!', 0x01 };
+    private static final byte[] TXT_2WIDTH_NEW = new byte[] { 0x1d, '!', 0x10 };
+    private static final byte[] LINE_SPACE_68 = new byte[] { 0x1b, 0x33, 68 };
+    private static final byte[] LINE_SPACE_88 = new byte[] { 0x1b, 0x33, 120 };
+    private static final byte[] DEFAULT_LINE_SPACE = new byte[] { 0x1b, 50 };
+
+    private static final DesignTemplateCache templateCache = new DesignTemplateCache();
+    private static final LruCache<String, BitMatrix> qrCodeCache = new LruCache<>(QR_CODE_CACHE_SIZE);
+
     private int printingWidth = PRINTING_WIDTH_58_MM;
+    private int streamChunkSize = PrinterOutputStream.DEFAULT_CHUNK_SIZE;
+    private ImageMode imageMode = ImageMode.BIT_IMAGE;
+    private int rasterTileHeight = DEFAULT_RASTER_TILE_HEIGHT;
+    private SymbolMode qrCodeMode = SymbolMode.NATIVE;
+    private SymbolMode symbolMode = SymbolMode.NATIVE;
     private io.github.escposjava.PrinterService basePrinterService;
-    private ReactApplicationContext context;
+    private BufferedPrinter bufferedPrinter;
+    private PrinterStatusMonitor statusMonitor;
+    private ImageCache imageCache = ImageCache.getInstance();
+    private LogoRegistry logoRegistry;
+    private TextEncoder textEncoder = new TextEncoder(CodePage.GBK);
+    private TextRasterizer textRasterizer;
 
     public PrinterService(Printer printer) throws IOException {
-        basePrinterService = new io.github.escposjava.PrinterService(printer);
+        this(printer, true);
+    }
+
+    /**
+     * @param open false to leave opening the printer to {@link #open()}, which
+     *             must then be called before anything is printed.
+     */
+    public PrinterService(Printer printer, boolean open) throws IOException {
+        bufferedPrinter = new BufferedPrinter(printer);
+        statusMonitor = new PrinterStatusMonitor(bufferedPrinter);
+        if (open) {
+            open();
+        }
     }
 
     public PrinterService(Printer printer, int printingWidth) throws IOException {
-        basePrinterService = new io.github.escposjava.PrinterService(printer);
+        this(printer);
         this.printingWidth = printingWidth;
     }
 
     public void cutPart() {
         basePrinterService.cutPart();
+        bufferedPrinter.flush();
     }
 
     public void cutFull() {
         basePrinterService.cutFull();
+        bufferedPrinter.flush();
     }
 
-    public void print(String text) throws UnsupportedEncodingException {
-        // TODO: get rid of GBK default!
-        write(text.getBytes("GBK"));
+    public void print(String text) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            textEncoder.write(text, out);
+        }
     }
 
-    public void printLn(String text) throws UnsupportedEncodingException {
+    public void printLn(String text) throws IOException {
         print(text + CARRIAGE_RETURN);
     }
 
@@ -118,50 +200,301 @@ public class PrinterService {
     }
 
     public void printDesign(String text) throws IOException {
-        ByteArrayOutputStream baos = generateDesignByteArrayOutputStream(text);
-        write(baos.toByteArray());
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeDesign(templateCache.compile(text), null, out);
+        }
     }
 
-    public Bitmap readImage(String filePath, ReactApplicationContext reactContext) throws IOException {
-        Uri fileUri = Uri.parse(filePath);
-        Bitmap image = null;
-        BitmapFactory.Options op = new BitmapFactory.Options();
-        op.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        image = BitmapFactory.decodeFile(fileUri.getPath(), op);
-        return image;
+    /**
+     * Prints a design registered with {@link #registerTemplate(String, String)},
+     * filling its ${var} slots from values. The design is not parsed again.
+     */
+    public void printTemplate(String templateId, Map<String, String> values) throws IOException {
+        DesignTemplate template = templateCache.get(templateId);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown template: " + templateId);
+        }
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeDesign(template, values, out);
+        }
+    }
+
+    public static void registerTemplate(String templateId, String design) {
+        templateCache.register(templateId, design);
+    }
+
+    public static void unregisterTemplate(String templateId) {
+        templateCache.unregister(templateId);
     }
 
     public void printImage(String filePath) throws IOException {
-        printImage(readImage(filePath, context));
+        printImage(filePath, Ditherer.Mode.THRESHOLD);
     }
 
     public void printImage(String filePath, int widthOffset) throws IOException {
-        printImage(readImage(filePath, context), widthOffset);
+        printImage(filePath, widthOffset, Ditherer.Mode.THRESHOLD);
+    }
+
+    /**
+     * Prints an image file at its own size, scaled down only if it is wider than
+     * the paper. Large files are decoded sampled and in bands, see {@link ImageLoader}.
+     */
+    public void printImage(String filePath, Ditherer.Mode ditherMode) throws IOException {
+        byte[] image = renderImageFile(filePath, printingWidth, 0, false, ditherMode, Bitplane.Alignment.LEFT);
+        try (PrinterOutputStream out = openOutputStream()) {
+            out.write(image);
+        }
+    }
+
+    public void printImage(String filePath, int widthOffset, Ditherer.Mode ditherMode) throws IOException {
+        byte[] image = renderImageFile(filePath, widthOffset, ditherMode, Bitplane.Alignment.LEFT);
+        try (PrinterOutputStream out = openOutputStream()) {
+            out.write(image);
+        }
     }
 
     public void printImage(Bitmap image) throws IOException {
-        // image = EscPosHelper.resizeImage(image, printingWidth - DEFAULT_IMG_WIDTH_OFFSET, DEFAULT_IMG_MAX_HEIGHT);
-        ByteArrayOutputStream baos = generateImageByteArrayOutputStream(image);
-        write(baos.toByteArray());
+        printImage(image, Ditherer.Mode.THRESHOLD);
+    }
+
+    public void printImage(Bitmap image, Ditherer.Mode ditherMode) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeImage(image, ditherMode, Bitplane.Alignment.LEFT, out);
+        }
     }
 
     public void printImage(Bitmap image, int widthOffset) throws IOException {
+        printImage(image, widthOffset, Ditherer.Mode.THRESHOLD);
+    }
+
+    public void printImage(Bitmap image, int widthOffset, Ditherer.Mode ditherMode) throws IOException {
         image = EscPosHelper.resizeImage(image, Math.max(printingWidth - Math.abs(widthOffset), 0), DEFAULT_IMG_MAX_HEIGHT);
-        ByteArrayOutputStream baos = generateImageByteArrayOutputStream(image);
-        write(baos.toByteArray());
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeImage(image, ditherMode, Bitplane.Alignment.LEFT, out);
+        }
     }
 
+    /**
+     * Prints a QR code about size dots wide, quiet zone included.
+     */
     public void printQRCode(String value, int size) throws QRCodeException {
-        ByteArrayOutputStream baos = generateQRCodeByteArrayOutputStream(value, size);
-        write(baos.toByteArray());
+        printQRCode(value, size, null);
+    }
+
+    /**
+     * Prints a QR code about size dots wide, quiet zone included.
+     *
+     * @param errorCorrection null for the default, L.
+     */
+    public void printQRCode(String value, int size, ErrorCorrectionLevel errorCorrection)
+            throws QRCodeException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeQRCode(value, size, 0, errorCorrection, Bitplane.Alignment.LEFT, out);
+        }
+    }
+
+    /**
+     * Prints a QR code with moduleSize dots per module.
+     *
+     * @param errorCorrection null for the default, L.
+     */
+    public void printQRCodeWithModuleSize(String value, int moduleSize, ErrorCorrectionLevel errorCorrection)
+            throws QRCodeException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeQRCode(value, 0, moduleSize, errorCorrection, Bitplane.Alignment.LEFT, out);
+        }
+    }
+
+    /**
+     * Stores an image file in the printer's memory under key, so it can later
+     * be printed with a few bytes by {@link #printLogo(String)}. Nothing is sent
+     * when the printer already holds the same raster under that key.
+     *
+     * @param key NV / DOWNLOAD: two printable ASCII characters. LEGACY_NV: 1-255.
+     * @return whether the image was uploaded.
+     */
+    public boolean storeLogo(String key, String filePath, LogoRegistry.Target target, Ditherer.Mode ditherMode)
+            throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            return writeStoreLogo(key, filePath, target, ditherMode, out);
+        }
+    }
+
+    public void printLogo(String key) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeLogo(key, out);
+        }
+    }
+
+    public void deleteLogo(String key) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeDeleteLogo(key, out);
+        }
+    }
+
+    public void setLogoRegistry(LogoRegistry logoRegistry) {
+        this.logoRegistry = logoRegistry;
+    }
+
+    /**
+     * @param moduleWidth     module width in dots, 2-8.
+     * @param rowHeight       row height as a multiple of the module width, 2-8.
+     * @param errorCorrection error correction level, 0-8.
+     */
+    public void printPDF417(String data, int moduleWidth, int rowHeight, int errorCorrection) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writePDF417(data, moduleWidth, rowHeight, errorCorrection, Bitplane.Alignment.LEFT, out);
+        }
+    }
+
+    /**
+     * @param moduleSize dots per module, 2-16.
+     */
+    public void printDataMatrix(String data, int moduleSize) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeDataMatrix(data, moduleSize, Bitplane.Alignment.LEFT, out);
+        }
+    }
+
+    /**
+     * MaxiCode can only be printed by the printer, ZXing has no encoder for it.
+     *
+     * @param mode MaxiCode mode, 2-6.
+     */
+    public void printMaxiCode(String data, int mode) throws IOException {
+        try (PrinterOutputStream out = openOutputStream()) {
+            writeMaxiCode(data, mode, out);
+        }
     }
 
     public void write(byte[] command) {
         basePrinterService.write(command);
     }
 
+    /**
+     * Sets how many bytes rendered jobs buffer before they are sent to the
+     * printer. Smaller chunks start printing sooner, larger ones mean fewer writes.
+     */
+    public void setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    /**
+     * Collects commands and sends them in as few writes as possible: on a
+     * cut, on {@link #flush()}, once flushThreshold bytes are waiting or
+     * lingerMillis after the first of them. Off by default.
+     */
+    public void setBuffering(boolean enabled, int flushThreshold, long lingerMillis) {
+        bufferedPrinter.setBuffering(enabled, flushThreshold, lingerMillis);
+    }
+
+    /**
+     * Sends the commands collected in buffering mode now.
+     */
+    public void flush() {
+        bufferedPrinter.flush();
+    }
+
+    public void setStatusListener(PrinterStatusMonitor.Listener listener) {
+        statusMonitor.setListener(listener);
+    }
+
+    /**
+     * Sets whether jobs first check the printer can print them, using a
+     * status up to maxAgeMillis old. On by default.
+     */
+    public void setStatusCheck(boolean enabled, int maxAgeMillis) {
+        statusMonitor.setCheckBeforeJobs(enabled, maxAgeMillis);
+    }
+
+    /**
+     * Has the printer report status changes as they happen (GS a) instead of
+     * being asked for them.
+     */
+    public void setAutomaticStatusBack(boolean enabled) {
+        statusMonitor.setAutomaticStatusBack(enabled);
+    }
+
+    /**
+     * @return the printer's status, at most maxAgeMillis old, null if it doesn't report it.
+     */
+    public PrinterStatus getStatus(int maxAgeMillis) throws IOException {
+        return statusMonitor.getStatus(maxAgeMillis);
+    }
+
+    /**
+     * Checks, if enabled, that the printer can print, see {@link #setStatusCheck(boolean, int)}.
+     */
+    public void checkReady() {
+        statusMonitor.checkReady();
+    }
+
+    /**
+     * @return the printer commands are sent to.
+     */
+    public Printer getPrinter() {
+        return bufferedPrinter.getPrinter();
+    }
+
+    public void setQRCodeMode(SymbolMode qrCodeMode) {
+        this.qrCodeMode = qrCodeMode;
+    }
+
+    /**
+     * Sets how PDF417, DataMatrix and MaxiCode symbols are printed. Printers
+     * often support QR codes but not these, so it is separate from
+     * {@link #setQRCodeMode(SymbolMode)}.
+     */
+    public void setSymbolMode(SymbolMode symbolMode) {
+        this.symbolMode = symbolMode;
+    }
+
+    public void setImageMode(ImageMode imageMode) {
+        this.imageMode = imageMode;
+    }
+
+    /**
+     * Sets the tallest block, in dots, sent at once in RASTER and GRAPHICS mode.
+     */
+    public void setRasterTileHeight(int rasterTileHeight) {
+        this.rasterTileHeight = rasterTileHeight;
+    }
+
     public void setCharCode(String code) {
         basePrinterService.setCharCode(code);
+        textEncoder.invalidate();
+    }
+
+    /**
+     * Sets the code page text is printed in, GBK by default. The printer is
+     * switched to it before the next text.
+     */
+    public void setCodePage(CodePage codePage) {
+        textEncoder.setCodePage(codePage);
+    }
+
+    /**
+     * Lets text switch between several single byte code pages, e.g. CP858 for
+     * accents and the euro sign and CP1253 for Greek, picking per stretch of
+     * text the page that covers it. Earlier pages are preferred.
+     */
+    public void setCodePages(CodePage... codePages) {
+        textEncoder.setCodePages(codePages);
+    }
+
+    /**
+     * Prints the runs of text no configured code page has as 24-dot images in
+     * line with the printer text around them, instead of as '?'.
+     *
+     * @param fontPath font file to draw them with, or null for the system font.
+     */
+    public void setTextRasterFallback(boolean enabled, String fontPath) {
+        textRasterizer = null;
+        if (enabled) {
+            Typeface typeface = fontPath != null ? Typeface.createFromFile(Uri.parse(fontPath).getPath()) : null;
+            textRasterizer = new TextRasterizer(typeface, fontPath, printingWidth);
+        }
+        textEncoder.setFallback(textRasterizer);
     }
 
     public void setCharsOnLine(int charsOnLine) {
@@ -170,6 +503,9 @@ public class PrinterService {
 
     public void setPrintingWidth(int printingWidth) {
         this.printingWidth = printingWidth;
+        if (textRasterizer != null) {
+            textRasterizer.setMaxWidth(printingWidth);
+        }
     }
 
     public void setTextDensity(int density) {
@@ -181,11 +517,21 @@ public class PrinterService {
     }
 
     public void open() throws IOException {
-        basePrinterService.open();
+        if (basePrinterService == null) {
+            // escpos-java opens the printer it is given
+            basePrinterService = new io.github.escposjava.PrinterService(bufferedPrinter);
+        } else {
+            basePrinterService.open();
+        }
+        textEncoder.invalidate();
+        statusMonitor.onOpen();
     }
 
     public void close() throws IOException {
-        basePrinterService.close();
+        if (basePrinterService != null) {
+            basePrinterService.close();
+        }
+        textEncoder.invalidate();
     }
 
     public void kickCashDrawerPin2() {
@@ -217,187 +563,441 @@ public class PrinterService {
      * DESIGN 3: Barcode                          *
      * {QR[Love me, hate me.]} {C}                *
      * {BC[Your Barcode here]} {C}                *
+     *                                            *
+     * DESIGN 4: Template values                  *
+     * Order ${orderId} {<>}             ${total} *
+     * {QR[${receiptUrl}]} {C}                    *
+     *                                            *
+     * DESIGN 5: Table                            *
+     * {TABLE:*L,3R,7R}                           *
+     * ${item} {<>} ${qty} {<>} ${amount}         *
+     * {/TABLE}                                   *
      **/
-    private ByteArrayOutputStream generateDesignByteArrayOutputStream(String text) throws IOException {
-        BufferedReader reader = new BufferedReader(new StringReader(text.trim()));
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        String line;
-
-        while ((line = reader.readLine()) != null) {
-            byte[] qtToWrite = null;
-            byte[] imageToWrite = null;
+    private void writeDesign(DesignTemplate template, Map<String, String> values, OutputStream out)
+            throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (DesignLine designLine : template.getLines()) {
+            Bitplane.Alignment alignment = designLine.hasStyle(DesignLine.RIGHT) ? Bitplane.Alignment.RIGHT
+                    : designLine.hasStyle(DesignLine.CENTER) ? Bitplane.Alignment.CENTER : Bitplane.Alignment.LEFT;
             byte[] bcToWrite = null;
-            if (line.matches(".*\\{QR\\[(.+)\\]\\}.*")) {
-                try {
-                    qtToWrite = generateQRCodeByteArrayOutputStream(line.replaceAll(".*\\{QR\\[(.+)\\]\\}.*", "$1"),
-                            DEFAULT_QR_CODE_SIZE).toByteArray();
-                } catch (QRCodeException e) {
-                    throw new IOException(e);
-                }
+            byte[] imageToWrite = null;
+            if (designLine.getBarcode() != null) {
+                bcToWrite = PrinterCommand.getBarCodeCommand(designLine.getBarcode().resolve(values),DEFAULT_BAR_CODE_FORMAT,DEFAULT_BAR_CODE_WIDTH,DEFAULT_BAR_CODE_HEIGHT,DEFAULT_BAR_CODE_FONT,DEFAULT_BAR_CODE_POSITION);
             }
-            if (line.matches(".*\\{BC\\[(.+)\\]\\}.*")) {
-                bcToWrite = PrinterCommand.getBarCodeCommand(line.replaceAll(".*\\{BC\\[(.+)\\]\\}.*", "$1"),DEFAULT_BAR_CODE_FORMAT,DEFAULT_BAR_CODE_WIDTH,DEFAULT_BAR_CODE_HEIGHT,DEFAULT_BAR_CODE_FONT,DEFAULT_BAR_CODE_POSITION);
+            if (designLine.getImage() != null) {
+                imageToWrite = renderImageFile(designLine.getImage().resolve(values), designLine.getImageWidthOffset(),
+                        designLine.getImageDitherMode(), alignment);
             }
-
-            String imgRegex = ".*\\{IMG\\[(.+)\\](?:\\}|:(\\d+)\\}).*";
-            Pattern imgPatter = Pattern.compile(imgRegex);
-            Matcher imgMatcher = imgPatter.matcher(line);
-            if (imgMatcher.find()) {
-                try {
-                    int offset = DEFAULT_IMG_WIDTH_OFFSET;
-                    if (imgMatcher.group(2).length() > 0) {
-                        offset = Integer.parseInt(imgMatcher.group(1));
-                    }
-                    imageToWrite = generateImageByteArrayOutputStream(
-                        EscPosHelper.resizeImage(
-                            readImage(line.replaceAll(".*\\{IMG\\[(.+)\\]\\}.*", "$1"), context), 
-                            Math.max(printingWidth - Math.abs(offset), 0), 
-                            DEFAULT_IMG_MAX_HEIGHT
-                        )
-                    ).toByteArray();
-                } catch (IOException e) {
-                    throw new IOException(e);
-                }
+            if (designLine.getLogo() != null) {
+                // May upload the logo first, keep that out of the styled part of the line.
+                ByteArrayOutputStream logo = new ByteArrayOutputStream();
+                writeLogo(designLine.getLogo().resolve(values), logo);
+                imageToWrite = logo.toByteArray();
             }
 
-
-            boolean bold = line.contains("{B}");
-            boolean underline = line.contains("{U}");
-            boolean h1 = line.contains("{H1}");
-            boolean h2 = line.contains("{H2}");
-            boolean h3 = line.contains("{H3}");
-            boolean lsm = line.contains("{LS:M}");
-            boolean lsl = line.contains("{LS:L}");
-            boolean ct = line.contains("{C}");
-            boolean rt = line.contains("{R}");
+            boolean bold = designLine.hasStyle(DesignLine.BOLD);
+            boolean underline = designLine.hasStyle(DesignLine.UNDERLINE);
+            boolean h1 = designLine.hasStyle(DesignLine.H1);
+            boolean h2 = designLine.hasStyle(DesignLine.H2);
+            boolean h3 = designLine.hasStyle(DesignLine.H3);
+            boolean lsm = designLine.hasStyle(DesignLine.LINE_SPACE_M);
+            boolean lsl = designLine.hasStyle(DesignLine.LINE_SPACE_L);
+            boolean ct = designLine.hasStyle(DesignLine.CENTER);
+            boolean rt = designLine.hasStyle(DesignLine.RIGHT);
             int charsOnLine = layoutBuilder.getCharsOnLine();
 
-            // TODO: Shouldn't put it here
-            byte[] ESC_t = new byte[] { 0x1b, 't', 0x00 };
-            byte[] ESC_M = new byte[] { 0x1b, 'M', 0x00 };
-            byte[] FS_and = new byte[] { 0x1c, '&' };
-            byte[] TXT_NORMAL_NEW = new byte[] { 0x1d, '!', 0x00 };
-            byte[] TXT_4SQUARE_NEW = new byte[] { 0x1d, '!', 0x11 };
-            byte[] TXT_2HEIGHT_NEW = new byte[] { 0x1d, '!', 0x01 };
-            byte[] TXT_2WIDTH_NEW = new byte[] { 0x1d, '!', 0x10 };
-            byte[] LINE_SPACE_68 = new byte[] { 0x1b, 0x33, 68 };
-            byte[] LINE_SPACE_88 = new byte[] { 0x1b, 0x33, 120 };
-            byte[] DEFAULT_LINE_SPACE = new byte[] { 0x1b, 50 };
-
-            baos.write(ESC_t);
-            baos.write(FS_and);
-            baos.write(ESC_M);
+            out.write(ESC_M);
 
             // Add tags
             if (bold) {
-                baos.write(TXT_BOLD_ON);
-                line = line.replace("{B}", "");
+                out.write(TXT_BOLD_ON);
             }
             if (underline) {
-                baos.write(TXT_UNDERL_ON);
-                line = line.replace("{U}", "");
+                out.write(TXT_UNDERL_ON);
             }
             if (h1) {
-                baos.write(TXT_4SQUARE_NEW);
-                baos.write(LINE_SPACE_88);
-                line = line.replace("{H1}", "");
+                out.write(TXT_4SQUARE_NEW);
+                out.write(LINE_SPACE_88);
                 charsOnLine = charsOnLine / 2;
             } else if (h2) {
-                baos.write(TXT_2HEIGHT_NEW);
-                baos.write(LINE_SPACE_88);
-                line = line.replace("{H2}", "");
+                out.write(TXT_2HEIGHT_NEW);
+                out.write(LINE_SPACE_88);
             } else if (h3) {
-                baos.write(TXT_2WIDTH_NEW);
-                baos.write(LINE_SPACE_68);
-                line = line.replace("{H3}", "");
+                out.write(TXT_2WIDTH_NEW);
+                out.write(LINE_SPACE_68);
                 charsOnLine = charsOnLine / 2;
             }
             if (lsm) {
-                baos.write(LINE_SPACE_24);
-                line = line.replace("{LS:M}", "");
+                out.write(LINE_SPACE_24);
             } else if (lsl) {
-                baos.write(LINE_SPACE_30);
-                line = line.replace("{LS:L}", "");
+                out.write(LINE_SPACE_30);
             }
             if (ct) {
-                baos.write(TXT_ALIGN_CT);
-                line = line.replace("{C}", "");
+                out.write(TXT_ALIGN_CT);
             }
             if (rt) {
-                baos.write(TXT_ALIGN_RT);
-                line = line.replace("{R}", "");
+                out.write(TXT_ALIGN_RT);
             }
 
             try {
-                if (qtToWrite != null) {
-                    baos.write(qtToWrite);
+                if (designLine.getQRCode() != null) {
+                    writeQRCode(designLine.getQRCode().resolve(values), DEFAULT_QR_CODE_SIZE,
+                            designLine.getQRModuleSize(), designLine.getQRErrorCorrection(), alignment, out);
                 }
                 if (imageToWrite != null) {
-                    baos.write(imageToWrite);
+                    out.write(imageToWrite);
                 }
                 if (bcToWrite != null) {
-                    baos.write(bcToWrite);
+                    out.write(bcToWrite);
                 }
-                if (qtToWrite == null && imageToWrite == null && bcToWrite == null) {
-                    // TODO: get rid of GBK default!
-                    baos.write(layoutBuilder.createFromDesign(line, charsOnLine).getBytes("GBK"));
+                if (designLine.getSymbol() != null) {
+                    writeSymbol(designLine.getSymbology(), designLine.getSymbol().resolve(values),
+                            designLine.getSymbolSize(), alignment, out);
                 }
-            } catch (UnsupportedEncodingException e) {
-                // Do nothing?
+                if (designLine.hasText()) {
+                    text.setLength(0);
+                    String line = designLine.getText().resolve(values);
+                    if (designLine.getTable() != null) {
+                        designLine.getTable().appendRow(line, 0, line.length(), charsOnLine, text);
+                    } else {
+                        layoutBuilder.appendFromDesign(line, charsOnLine, text);
+                    }
+                    textEncoder.write(text, out);
+                }
+            } catch (QRCodeException e) {
+                throw new IOException(e);
             }
 
             // Remove tags
             if (bold) {
-                baos.write(TXT_BOLD_OFF);
+                out.write(TXT_BOLD_OFF);
             }
             if (underline) {
-                baos.write(TXT_UNDERL_OFF);
+                out.write(TXT_UNDERL_OFF);
             }
             if (h1 || h2 || h3) {
-                baos.write(DEFAULT_LINE_SPACE);
-                baos.write(TXT_NORMAL_NEW);
+                out.write(DEFAULT_LINE_SPACE);
+                out.write(TXT_NORMAL_NEW);
             }
             if (lsm || lsl) {
-                baos.write(LINE_SPACE_24);
+                out.write(LINE_SPACE_24);
             }
             if (ct || rt) {
-                baos.write(TXT_ALIGN_LT);
+                out.write(TXT_ALIGN_LT);
+            }
+        }
+    }
+
+    private byte[] renderImageFile(String filePath, int widthOffset, Ditherer.Mode ditherMode,
+            Bitplane.Alignment alignment) throws IOException {
+        return renderImageFile(filePath, Math.max(printingWidth - Math.abs(widthOffset), 0), DEFAULT_IMG_MAX_HEIGHT,
+                true, ditherMode, alignment);
+    }
+
+    /**
+     * Returns the ESC/POS bytes for an image file, from the {@link ImageCache}
+     * when the same file was already rendered with the same options.
+     */
+    private byte[] renderImageFile(String filePath, int maxWidth, int maxHeight, boolean enlarge,
+            Ditherer.Mode ditherMode, Bitplane.Alignment alignment) throws IOException {
+        File file = new File(Uri.parse(filePath).getPath());
+        String key = ImageCache.key(file, maxWidth + "x" + maxHeight + (enlarge ? "+" : "") + '|' + ditherMode
+                + '|' + alignment + '|' + imageMode + '|' + rasterTileHeight);
+        byte[] image = imageCache.get(key);
+        if (image == null) {
+            Bitplane bitplane = ImageLoader.load(filePath, maxWidth, maxHeight, enlarge, ditherMode);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeBitplane(bitplane, alignment, baos);
+            image = baos.toByteArray();
+            imageCache.put(key, image);
+        }
+        return image;
+    }
+
+    private boolean writeStoreLogo(String key, String filePath, LogoRegistry.Target target,
+            Ditherer.Mode ditherMode, OutputStream out) throws IOException {
+        requireLogoRegistry();
+        if (ditherMode == null) {
+            ditherMode = Ditherer.Mode.THRESHOLD;
+        }
+        if (target == LogoRegistry.Target.LEGACY_NV) {
+            getLegacyLogoNumber(key);
+        }
+        Bitplane bitplane = ImageLoader.load(filePath, printingWidth, 0, false, ditherMode);
+        String hash = hashBitplane(bitplane);
+        File file = new File(Uri.parse(filePath).getPath());
+        LogoRegistry.Entry stored = logoRegistry.get(key);
+        LogoRegistry.Entry entry = new LogoRegistry.Entry(key, target, hash, filePath, file.length(),
+                file.lastModified(), ditherMode.name());
+
+        boolean upload = stored == null || stored.target != target || !stored.hash.equals(hash);
+        if (upload) {
+            if (stored != null && stored.target != target) {
+                writeDeleteLogo(key, out);
             }
+            switch (target) {
+                case LEGACY_NV:
+                    writeLegacyLogos(entry, bitplane, out);
+                    break;
+                case NV:
+                case DOWNLOAD:
+                default:
+                    out.write(PrinterCommand.getDefineGraphicsCommand(target == LogoRegistry.Target.NV, key,
+                            bitplane.getWidth(), bitplane.getHeight(), bitplane.getData()));
+            }
+        }
+        logoRegistry.put(entry);
+        return upload;
+    }
+
+    private void writeDeleteLogo(String key, OutputStream out) throws IOException {
+        LogoRegistry.Entry entry = requireLogoRegistry().get(key);
+        if (entry == null) {
+            return;
+        }
+        logoRegistry.remove(key);
+        switch (entry.target) {
+            case NV:
+                out.write(PrinterCommand.getDeleteGraphicsCommand(key));
+                break;
+            case LEGACY_NV:
+                writeLegacyLogos(null, null, out);
+                break;
+            case DOWNLOAD:
+            default:
+                // Download memory is cleared by the printer on reset, nothing to send.
+        }
+    }
+
+    /**
+     * Writes the print command of a stored logo, storing it again first when
+     * its file changed since it was uploaded.
+     */
+    private void writeLogo(String key, OutputStream out) throws IOException {
+        LogoRegistry.Entry entry = requireLogoRegistry().get(key);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown logo: " + key);
+        }
+        File file = new File(Uri.parse(entry.filePath).getPath());
+        if (file.isFile() && (file.length() != entry.fileLength || file.lastModified() != entry.fileModified)) {
+            writeStoreLogo(key, entry.filePath, entry.target, Ditherer.Mode.parse(entry.ditherMode), out);
         }
 
-        return baos;
+        switch (entry.target) {
+            case LEGACY_NV:
+                out.write(PrinterCommand.getLegacyPrintImageCommand(getLegacyLogoNumber(key)));
+                break;
+            case NV:
+            case DOWNLOAD:
+            default:
+                out.write(PrinterCommand.getPrintGraphicsCommand(entry.target == LogoRegistry.Target.NV, key));
+        }
     }
 
-    private ByteArrayOutputStream generateImageByteArrayOutputStream(Bitmap image) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    /**
+     * FS q replaces all NV bit images at once, so every registered legacy logo
+     * is sent again, numbered by key, with blank placeholders for unused numbers.
+     * When none is left a single blank image replaces the last one deleted.
+     *
+     * @param added    logo being stored, or null when one was deleted.
+     * @param addedPlane raster of added.
+     */
+    private void writeLegacyLogos(LogoRegistry.Entry added, Bitplane addedPlane, OutputStream out)
+            throws IOException {
+        List<LogoRegistry.Entry> entries = logoRegistry.getAll(LogoRegistry.Target.LEGACY_NV);
+        int count = added != null ? getLegacyLogoNumber(added.key) : 0;
+        for (LogoRegistry.Entry entry : entries) {
+            count = Math.max(count, getLegacyLogoNumber(entry.key));
+        }
+        if (count == 0) {
+            // FS q takes 1 to 255 images, a single blank one clears the rest
+            count = 1;
+        }
 
-        baos.write(LINE_SPACE_24);
-        for (int y = 0; y < image.getHeight(); y += 24) {
-            baos.write(SELECT_BIT_IMAGE_MODE); // bit mode
-            // width, low & high
-            baos.write(new byte[] { (byte) (0x00ff & image.getWidth()), (byte) ((0xff00 & image.getWidth()) >> 8) });
-            for (int x = 0; x < image.getWidth(); x++) {
-                // For each vertical line/slice must collect 3 bytes (24 bytes)
-                baos.write(EscPosHelper.collectImageSlice(y, x, image));
+        Bitplane[] planes = new Bitplane[count];
+        for (LogoRegistry.Entry entry : entries) {
+            if (added == null || !entry.key.equals(added.key)) {
+                planes[getLegacyLogoNumber(entry.key) - 1] = ImageLoader.load(entry.filePath, printingWidth, 0,
+                        false, Ditherer.Mode.parse(entry.ditherMode));
             }
-            baos.write(CTL_LF);
+        }
+        if (added != null) {
+            planes[getLegacyLogoNumber(added.key) - 1] = addedPlane;
         }
 
-        return baos;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        byte[][] columnData = new byte[count][];
+        for (int n = 0; n < count; n++) {
+            Bitplane plane = planes[n] != null ? planes[n] : new Bitplane(8, 8);
+            widths[n] = plane.getWidth();
+            heights[n] = plane.getHeight();
+            columnData[n] = plane.toColumnData();
+        }
+        out.write(PrinterCommand.getLegacyDefineImagesCommand(widths, heights, columnData));
     }
 
-    private ByteArrayOutputStream generateQRCodeByteArrayOutputStream(String value, int size) throws QRCodeException {
+    private static int getLegacyLogoNumber(String key) {
         try {
-            BitMatrix result = new QRCodeWriter().encode(value, BarcodeFormat.QR_CODE, size, size, null);
-            Bitmap qrcode = BitMatrixUtils.convertToBitmap(result);
-            return generateImageByteArrayOutputStream(qrcode);
+            int n = Integer.parseInt(key);
+            if (n >= 1 && n <= 255) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        throw new IllegalArgumentException("Legacy logo key must be a number from 1 to 255: " + key);
+    }
+
+    private static String hashBitplane(Bitplane bitplane) {
+        byte[] size = new byte[] {
+            (byte) (bitplane.getWidth() >> 8), (byte) bitplane.getWidth(),
+            (byte) (bitplane.getHeight() >> 8), (byte) bitplane.getHeight()
+        };
+        return EscPosHelper.sha1Hex(size, bitplane.getData());
+    }
+
+    private LogoRegistry requireLogoRegistry() {
+        if (logoRegistry == null) {
+            throw new IllegalStateException("Logos need a connected printer");
+        }
+        return logoRegistry;
+    }
+
+    private void writeImage(Bitmap image, Ditherer.Mode ditherMode, Bitplane.Alignment alignment, OutputStream out)
+            throws IOException {
+        writeBitplane(Bitplane.fromBitmap(image, ditherMode), alignment, out);
+    }
+
+    /**
+     * Writes the image without its white borders, see {@link Bitplane#trim(Bitplane.Alignment)}.
+     */
+    private void writeBitplane(Bitplane bitplane, Bitplane.Alignment alignment, OutputStream out)
+            throws IOException {
+        bitplane = bitplane.trim(alignment);
+        switch (imageMode) {
+            case RASTER:
+                bitplane.writeRaster(out, rasterTileHeight);
+                break;
+            case GRAPHICS:
+                bitplane.writeGraphics(out, rasterTileHeight);
+                break;
+            case BIT_IMAGE:
+            default:
+                out.write(LINE_SPACE_24);
+                bitplane.writeBitImage(out, alignment == Bitplane.Alignment.LEFT);
+        }
+    }
+
+    /**
+     * @param size       width in dots, quiet zone included, used when moduleSize is 0.
+     * @param moduleSize dots per module, or 0 to derive it from size.
+     */
+    private void writeQRCode(String value, int size, int moduleSize, ErrorCorrectionLevel errorCorrection,
+            Bitplane.Alignment alignment, OutputStream out) throws QRCodeException {
+        if (errorCorrection == null) {
+            errorCorrection = ErrorCorrectionLevel.L;
+        }
+        try {
+            if (moduleSize <= 0) {
+                BitMatrix matrix = encodeQRCode(value, errorCorrection);
+                moduleSize = size / (matrix.getWidth() + 2 * QR_CODE_QUIET_ZONE);
+            }
+            moduleSize = Math.max(1, moduleSize);
+            if (qrCodeMode == SymbolMode.NATIVE) {
+                moduleSize = Math.min(moduleSize, QR_CODE_MAX_MODULE_SIZE);
+                out.write(PrinterCommand.getQRCodeCommand(value, moduleSize, errorCorrection.ordinal()));
+            } else {
+                BitMatrix matrix = encodeQRCode(value, errorCorrection);
+                moduleSize = Math.min(moduleSize, Math.max(1, printingWidth / matrix.getWidth()));
+                writeBitplane(BitMatrixUtils.toBitplane(matrix, moduleSize), alignment, out);
+            }
         } catch (IllegalArgumentException | WriterException | IOException e) {
             // Unsupported format
             throw new QRCodeException("QRCode generation error", e);
         }
     }
 
-    public void setContext(ReactApplicationContext reactContext) {
-        this.context = reactContext;
+    /**
+     * Encodes value into a matrix of modules without quiet zone. Recently used
+     * values, like a store's review URL on every receipt, are not encoded again.
+     */
+    private static BitMatrix encodeQRCode(String value, ErrorCorrectionLevel errorCorrection)
+            throws WriterException {
+        String key = errorCorrection.name() + '|' + value;
+        BitMatrix matrix = qrCodeCache.get(key);
+        if (matrix == null) {
+            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+            hints.put(EncodeHintType.ERROR_CORRECTION, errorCorrection);
+            hints.put(EncodeHintType.MARGIN, 0);
+            matrix = new QRCodeWriter().encode(value, BarcodeFormat.QR_CODE, 0, 0, hints);
+            qrCodeCache.put(key, matrix);
+        }
+        return matrix;
+    }
+
+    /**
+     * Writes a {PDF417[..]}, {DM[..]} or {MAXI[..]} design node.
+     *
+     * @param size module size (PDF417, DataMatrix) or mode (MaxiCode), 0 for the default.
+     */
+    private void writeSymbol(Symbology symbology, String data, int size, Bitplane.Alignment alignment,
+            OutputStream out) throws IOException {
+        switch (symbology) {
+            case PDF417:
+                writePDF417(data, size > 0 ? size : DEFAULT_PDF417_MODULE_WIDTH, DEFAULT_PDF417_ROW_HEIGHT,
+                        DEFAULT_PDF417_ERROR_CORRECTION, alignment, out);
+                break;
+            case DATA_MATRIX:
+                writeDataMatrix(data, size > 0 ? size : DEFAULT_DATA_MATRIX_MODULE_SIZE, alignment, out);
+                break;
+            case MAXICODE:
+            default:
+                writeMaxiCode(data, size > 0 ? size : DEFAULT_MAXICODE_MODE, out);
+        }
+    }
+
+    private void writePDF417(String data, int moduleWidth, int rowHeight, int errorCorrection,
+            Bitplane.Alignment alignment, OutputStream out) throws IOException {
+        if (symbolMode == SymbolMode.NATIVE) {
+            out.write(PrinterCommand.getPDF417Command(data, moduleWidth, rowHeight, errorCorrection));
+            return;
+        }
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, errorCorrection);
+        hints.put(EncodeHintType.MARGIN, 0);
+        BitMatrix matrix = encodeSymbol(new PDF417Writer(), data, BarcodeFormat.PDF_417, hints);
+        int rowScale = Math.max(1, Math.round((float) moduleWidth * rowHeight / PDF417_RASTER_ROW_HEIGHT));
+        writeBitplane(BitMatrixUtils.toBitplane(matrix, moduleWidth, rowScale), alignment, out);
+    }
+
+    private void writeDataMatrix(String data, int moduleSize, Bitplane.Alignment alignment, OutputStream out)
+            throws IOException {
+        if (symbolMode == SymbolMode.NATIVE) {
+            out.write(PrinterCommand.getDataMatrixCommand(data, moduleSize));
+            return;
+        }
+        BitMatrix matrix = encodeSymbol(new DataMatrixWriter(), data, BarcodeFormat.DATA_MATRIX, null);
+        writeBitplane(BitMatrixUtils.toBitplane(matrix, moduleSize), alignment, out);
+    }
+
+    private void writeMaxiCode(String data, int mode, OutputStream out) throws IOException {
+        if (symbolMode != SymbolMode.NATIVE) {
+            throw new IllegalStateException("MaxiCode can only be printed in native symbol mode");
+        }
+        out.write(PrinterCommand.getMaxiCodeCommand(data, mode));
+    }
+
+    private static BitMatrix encodeSymbol(Writer writer, String data, BarcodeFormat format,
+            Map<EncodeHintType, ?> hints) throws IOException {
+        try {
+            return writer.encode(data, format, 0, 0, hints);
+        } catch (WriterException e) {
+            throw new IOException("Could not encode " + format, e);
+        }
+    }
+
+    private PrinterOutputStream openOutputStream() {
+        return new PrinterOutputStream(this, streamChunkSize);
     }
 }
@@ -0,0 +1,199 @@
+package gmrcp.reactnativeescpos;
+
+import android.os.SystemClock;
+
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+import gmrcp.reactnativeescpos.helpers.PrinterStatusException;
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
+import io.github.escposjava.print.Printer;
+
+import java.io.IOException;
+
+/**
+ * Knows the status of a printer that can be read from, so jobs are not sent
+ * to one that can't print them. The status is asked for with DLE EOT 1 to 4
+ * when the last one is older than maxAge, or, with Automatic Status Back
+ * enabled, kept current by the messages the printer sends on every change.
+ * Printers that never answer are taken as ready. Used on the writer thread.
+ */
+public class PrinterStatusMonitor {
+    public interface Listener {
+        void onStatusChanged(PrinterStatus status);
+    }
+
+    public static final int DEFAULT_MAX_AGE_MILLIS = 2000;
+    public static final int REPLY_TIMEOUT_MILLIS = 1000;
+
+    private final BufferedPrinter printer;
+    private Listener listener;
+    private boolean checkBeforeJobs = true;
+    private int maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private boolean automaticStatusBack = false;
+    // Whether the printer answers DLE EOT, null until asked
+    private Boolean answers = null;
+    private PrinterStatus status;
+    private long statusTime;
+    // Whether Automatic Status Back keeps status current
+    private boolean statusPushed = false;
+    private final byte[] message = new byte[PrinterStatus.ASB_LENGTH];
+    private int messageLength = 0;
+    private final byte[] received = new byte[64];
+
+    public PrinterStatusMonitor(BufferedPrinter printer) {
+        this.printer = printer;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param maxAgeMillis how old a status may be to be used instead of asking again.
+     */
+    public void setCheckBeforeJobs(boolean checkBeforeJobs, int maxAgeMillis) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Status age must not be negative");
+        }
+        this.checkBeforeJobs = checkBeforeJobs;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Has the printer send its status on every change (GS a), so checks
+     * before jobs don't need to ask.
+     */
+    public void setAutomaticStatusBack(boolean enabled) {
+        if (enabled && !(printer.getPrinter() instanceof ReadablePrinter)) {
+            throw new IllegalArgumentException("Automatic Status Back needs a printer that can be read from");
+        }
+        printer.write(PrinterStatus.automaticStatusBack(enabled));
+        printer.flush();
+        automaticStatusBack = enabled;
+        statusPushed = false;
+        messageLength = 0;
+    }
+
+    /**
+     * Forgets what the printer said before it was reopened, and enables
+     * Automatic Status Back again.
+     */
+    public void onOpen() {
+        answers = null;
+        status = null;
+        statusPushed = false;
+        messageLength = 0;
+        if (automaticStatusBack) {
+            setAutomaticStatusBack(true);
+        }
+    }
+
+    /**
+     * @throws PrinterStatusException when the printer reports it can't print.
+     * @throws PrinterWriteException  when a printer that answered before no longer does.
+     */
+    public void checkReady() {
+        if (!checkBeforeJobs) {
+            return;
+        }
+        PrinterStatus status;
+        try {
+            status = getStatus(maxAgeMillis);
+        } catch (IOException e) {
+            throw new PrinterWriteException("Printer did not answer a status request", e);
+        }
+        if (status != null && !status.isReady()) {
+            throw new PrinterStatusException(status);
+        }
+    }
+
+    /**
+     * @param maxAgeMillis how old the last status may be, 0 to always ask.
+     * @return the printer's status, null if it doesn't report it.
+     * @throws IOException when a printer that answered before no longer does.
+     */
+    public PrinterStatus getStatus(int maxAgeMillis) throws IOException {
+        Printer raw = printer.getPrinter();
+        if (!(raw instanceof ReadablePrinter)) {
+            return null;
+        }
+        ReadablePrinter readable = (ReadablePrinter) raw;
+        int n;
+        while ((n = readable.read(received, 0, received.length, 0)) > 0) {
+            for (int i = 0; i < n; i++) {
+                consume(received[i] & 0xff);
+            }
+        }
+        if (status != null && (statusPushed || SystemClock.elapsedRealtime() - statusTime < maxAgeMillis)) {
+            return status;
+        }
+        if (Boolean.FALSE.equals(answers)) {
+            return null;
+        }
+
+        printer.flush();
+        byte[] replies = new byte[4];
+        for (int i = 0; i < replies.length; i++) {
+            readable.write(PrinterStatus.request(i + 1));
+            int reply = awaitReply(readable);
+            if (reply < 0) {
+                if (answers == null) {
+                    answers = false;
+                    return null;
+                }
+                throw new IOException("Printer did not answer a status request");
+            }
+            replies[i] = (byte) reply;
+        }
+        answers = true;
+        update(PrinterStatus.fromRealTime(replies), false);
+        return status;
+    }
+
+    /**
+     * @return the next DLE EOT reply, -1 if none came in time.
+     */
+    private int awaitReply(ReadablePrinter readable) throws IOException {
+        long deadline = SystemClock.elapsedRealtime() + REPLY_TIMEOUT_MILLIS;
+        while (true) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0 || readable.read(received, 0, 1, (int) remaining) == 0) {
+                return -1;
+            }
+            int b = received[0] & 0xff;
+            if (!consume(b) && PrinterStatus.isReply(b)) {
+                return b;
+            }
+        }
+    }
+
+    /**
+     * Collects Automatic Status Back messages.
+     *
+     * @return whether b was part of one.
+     */
+    private boolean consume(int b) {
+        if (messageLength > 0) {
+            message[messageLength++] = (byte) b;
+            if (messageLength == message.length) {
+                messageLength = 0;
+                update(PrinterStatus.fromAutomaticStatusBack(message), true);
+            }
+            return true;
+        }
+        if (automaticStatusBack && PrinterStatus.isAutomaticStatusBackStart(b)) {
+            message[messageLength++] = (byte) b;
+            return true;
+        }
+        return false;
+    }
+
+    private void update(PrinterStatus newStatus, boolean pushed) {
+        PrinterStatus previous = status;
+        status = newStatus;
+        statusTime = SystemClock.elapsedRealtime();
+        statusPushed |= pushed;
+        if (listener != null && !newStatus.equals(previous)) {
+            listener.onStatusChanged(newStatus);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package gmrcp.reactnativeescpos;
+
+import io.github.escposjava.print.Printer;
+
+import java.io.IOException;
+
+/**
+ * Printer whose replies, e.g. to DLE EOT status requests, can be read.
+ */
+public interface ReadablePrinter extends Printer {
+    /**
+     * Reads up to length bytes the printer sent, waiting at most timeoutMillis
+     * for the first of them.
+     *
+     * @return the number of bytes read, 0 if none came in time.
+     */
+    int read(byte[] buffer, int offset, int length, int timeoutMillis) throws IOException;
+}
@@ -0,0 +1,268 @@
+package gmrcp.reactnativeescpos;
+
+import java.io.IOException;
+
+import gmrcp.reactnativeescpos.utils.DisplayWidth;
+
+/**
+ * Lays out rows of {<>} separated cells in fixed columns, measured in display
+ * width (see {@link DisplayWidth}) so CJK text, combining marks and emoji line
+ * up. Columns are separated by a space. A cell that does not fit its column
+ * either wraps at word boundaries onto more lines, or is truncated.
+ * <p>
+ * Columns are given as a spec like "*L,4R,8RT": a width, or * for a share of
+ * what the other columns leave, then L, C or R for the alignment and an
+ * optional T to truncate instead of wrap. Each character is measured once,
+ * as it is laid out.
+ */
+public class TableLayout {
+    public static final char LEFT = 'L';
+    public static final char CENTER = 'C';
+    public static final char RIGHT = 'R';
+    private static final char TRUNCATE = 'T';
+    private static final char WRAP = 'W';
+    private static final int FILL = -1;
+    private static final String CELL_SEPARATOR = "{<>}";
+
+    private final int[] widths;
+    private final char[] alignments;
+    private final boolean[] truncates;
+    // Scratch for appendRow, guarded by this
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] columnWidths;
+    private int columnWidthsFor = -1;
+
+    public TableLayout(int[] widths, char[] alignments, boolean[] truncates) {
+        if (widths.length == 0 || widths.length != alignments.length || widths.length != truncates.length) {
+            throw new IllegalArgumentException("A table needs one width, alignment and overflow per column");
+        }
+        this.widths = widths.clone();
+        this.alignments = alignments.clone();
+        this.truncates = truncates.clone();
+        this.starts = new int[widths.length];
+        this.ends = new int[widths.length];
+        this.columnWidths = new int[widths.length];
+    }
+
+    /**
+     * Parses a column spec like "20L,6R,*LT", see {@link TableLayout}.
+     */
+    public static TableLayout parse(String spec) {
+        String[] columns = spec.split(",");
+        int[] widths = new int[columns.length];
+        char[] alignments = new char[columns.length];
+        boolean[] truncates = new boolean[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            String column = columns[c].trim().toUpperCase();
+            int i = 0;
+            if (column.startsWith("*")) {
+                widths[c] = FILL;
+                i = 1;
+            } else {
+                while (i < column.length() && Character.isDigit(column.charAt(i))) {
+                    i++;
+                }
+                if (i == 0 || i > 4) {
+                    throw new IllegalArgumentException("Invalid table column: " + columns[c]);
+                }
+                widths[c] = Integer.parseInt(column.substring(0, i));
+            }
+            alignments[c] = LEFT;
+            for (; i < column.length(); i++) {
+                char option = column.charAt(i);
+                if (option == LEFT || option == CENTER || option == RIGHT) {
+                    alignments[c] = option;
+                } else if (option == TRUNCATE || option == WRAP) {
+                    truncates[c] = option == TRUNCATE;
+                } else {
+                    throw new IllegalArgumentException("Invalid table column: " + columns[c]);
+                }
+            }
+        }
+        return new TableLayout(widths, alignments, truncates);
+    }
+
+    public int getColumnCount() {
+        return widths.length;
+    }
+
+    /**
+     * Appends text[start, end), {<>} separated cells, as one table row of as
+     * many lines as its wrapped cells need. Cells are trimmed, cells beyond the
+     * last column are added to it, and missing cells are left empty.
+     */
+    public synchronized void appendRow(CharSequence text, int start, int end, int charsOnLine, Appendable out)
+            throws IOException {
+        resolveColumnWidths(charsOnLine);
+        int columns = widths.length;
+        int cellStart = start;
+        for (int c = 0; c < columns; c++) {
+            int cellEnd = c < columns - 1 ? indexOf(text, CELL_SEPARATOR, cellStart, end) : -1;
+            if (cellEnd < 0) {
+                cellEnd = end;
+            }
+            starts[c] = skipSpaces(text, cellStart, cellEnd);
+            int trimmedEnd = cellEnd;
+            while (trimmedEnd > starts[c] && text.charAt(trimmedEnd - 1) == ' ') {
+                trimmedEnd--;
+            }
+            ends[c] = trimmedEnd;
+            cellStart = Math.min(cellEnd + CELL_SEPARATOR.length(), end);
+        }
+
+        boolean more = true;
+        while (more) {
+            more = false;
+            int pending = 0;
+            for (int c = 0; c < columns; c++) {
+                int width = columnWidths[c];
+                if (width <= 0) {
+                    continue;
+                }
+                if (c > 0) {
+                    pending++;
+                }
+                int from = starts[c];
+                long fit = fit(text, from, ends[c], width, !truncates[c]);
+                int to = (int) (fit >>> 32);
+                int padding = width - (int) fit;
+                int before = alignments[c] == RIGHT ? padding : alignments[c] == CENTER ? padding / 2 : 0;
+
+                // Spaces at the end of the line are left out
+                if (to > from) {
+                    appendRepeated(' ', pending + before, out);
+                    out.append(text, from, to);
+                    pending = padding - before;
+                } else {
+                    pending += width;
+                }
+
+                starts[c] = truncates[c] ? ends[c] : skipSpaces(text, to, ends[c]);
+                more |= starts[c] < ends[c];
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Appends text as lines of at most width, wrapped at word boundaries, each
+     * aligned and padded to width with padding.
+     */
+    static void appendWrapped(CharSequence text, int width, char alignment, char padding, Appendable out)
+            throws IOException {
+        int end = text.length();
+        int from = 0;
+        do {
+            long fit = fit(text, from, end, width, true);
+            int to = (int) (fit >>> 32);
+            int space = width - (int) fit;
+            int before = alignment == RIGHT ? space : alignment == CENTER ? space / 2 : 0;
+            appendRepeated(padding, before, out);
+            out.append(text, from, to);
+            appendRepeated(padding, space - before, out);
+            out.append('\n');
+            from = skipSpaces(text, to, end);
+        } while (from < end);
+    }
+
+    private void resolveColumnWidths(int charsOnLine) {
+        if (charsOnLine == columnWidthsFor) {
+            return;
+        }
+        int fixed = widths.length - 1;
+        int fills = 0;
+        for (int width : widths) {
+            if (width == FILL) {
+                fills++;
+            } else {
+                fixed += width;
+            }
+        }
+        int left = Math.max(0, charsOnLine - fixed);
+        for (int c = 0; c < widths.length; c++) {
+            if (widths[c] != FILL) {
+                columnWidths[c] = widths[c];
+            } else {
+                // The first fill columns take the remainder
+                columnWidths[c] = left / fills + (left % fills > 0 ? 1 : 0);
+                left -= columnWidths[c];
+                fills--;
+            }
+        }
+        columnWidthsFor = charsOnLine;
+    }
+
+    /**
+     * Finds how much of text[from, end) goes on one line of width cells:
+     * up to the last space that fits when wrapping words and the line is
+     * full, else as many characters as fit, and at least one.
+     *
+     * @return the end of the line's part in the upper and its display width
+     * in the lower 32 bits.
+     */
+    private static long fit(CharSequence text, int from, int end, int width, boolean wordWrap) {
+        int i = from;
+        int used = 0;
+        int lastSpace = -1;
+        int usedAtSpace = 0;
+        while (i < end) {
+            char c = text.charAt(i);
+            int length = 1;
+            int w;
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                w = DisplayWidth.ofCodePoint(Character.toCodePoint(c, text.charAt(i + 1)));
+                length = 2;
+            } else {
+                w = DisplayWidth.of(c);
+            }
+            if (used + w > width) {
+                if (i == from) {
+                    // Wider than the column, it has to go somewhere
+                    return ((long) (i + length) << 32) | Math.min(w, width);
+                }
+                if (wordWrap && c != ' ' && lastSpace > from) {
+                    return ((long) lastSpace << 32) | usedAtSpace;
+                }
+                break;
+            }
+            if (c == ' ') {
+                lastSpace = i;
+                usedAtSpace = used;
+            }
+            used += w;
+            i += length;
+        }
+        return ((long) i << 32) | used;
+    }
+
+    private static int skipSpaces(CharSequence text, int from, int end) {
+        while (from < end && text.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static void appendRepeated(char c, int count, Appendable out) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+    }
+
+    /**
+     * @return the index of the first s within text[start, end), or -1.
+     */
+    static int indexOf(CharSequence text, String s, int start, int end) {
+        int last = end - s.length();
+        for (int i = start; i <= last; i++) {
+            int j = 0;
+            while (j < s.length() && text.charAt(i + j) == s.charAt(j)) {
+                j++;
+            }
+            if (j == s.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
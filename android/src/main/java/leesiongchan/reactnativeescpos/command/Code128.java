@@ -0,0 +1,126 @@
+package gmrcp.reactnativeescpos.command;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes text as GS k Code 128 data with the fewest symbol characters, i.e.
+ * the narrowest barcode. Digit pairs go in code set C, control characters in
+ * A, lower case in B, switching ({A, {B, {C) or shifting ({S) for a single
+ * character wherever that is shorter. The printer adds start, check and stop
+ * characters.
+ *
+ * @reference ESC/POS Command Reference, GS k m = 73
+ */
+public class Code128 {
+    private static final int A = 0;
+    private static final int B = 1;
+    private static final int C = 2;
+    private static final char[] SET_NAMES = { 'A', 'B', 'C' };
+    private static final int SHIFT = 3;
+    private static final int SWITCH = 4;
+
+    private Code128() {
+    }
+
+    /**
+     * Text that already starts with a code set selection ({A, {B or {C) is
+     * taken as encoded and returned as it is.
+     */
+    public static byte[] encode(String text) {
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            if (text.charAt(i) > 127) {
+                throw new IllegalArgumentException("Code 128 only encodes ASCII: " + text);
+            }
+        }
+        if (n >= 2 && text.charAt(0) == '{' && text.charAt(1) >= 'A' && text.charAt(1) <= 'C') {
+            return asciiBytes(text);
+        }
+
+        // cost[i][set]: fewest symbol characters for text[i..] with set selected
+        // stay: the same without switching first, with the action taken.
+        // Switching twice in a row is never shorter, so one level suffices.
+        int[][] cost = new int[n + 1][3];
+        int[][] step = new int[n + 1][3];
+        int[] stay = new int[3];
+        int[][] stayStep = new int[n + 1][3];
+        for (int i = n - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            for (int set = A; set <= B; set++) {
+                if (inSet(c, set)) {
+                    stay[set] = 1 + cost[i + 1][set];
+                    stayStep[i][set] = set;
+                } else {
+                    stay[set] = 2 + cost[i + 1][set];
+                    stayStep[i][set] = SHIFT;
+                }
+            }
+            stay[C] = Integer.MAX_VALUE / 2;
+            if (i + 1 < n && isDigit(c) && isDigit(text.charAt(i + 1))) {
+                stay[C] = 1 + cost[i + 2][C];
+                stayStep[i][C] = C;
+            }
+            for (int set = A; set <= C; set++) {
+                cost[i][set] = stay[set];
+                step[i][set] = stayStep[i][set];
+                for (int other = A; other <= C; other++) {
+                    if (other != set && 1 + stay[other] < cost[i][set]) {
+                        cost[i][set] = 1 + stay[other];
+                        step[i][set] = SWITCH + other;
+                    }
+                }
+            }
+        }
+
+        int set = A;
+        for (int s = B; s <= C; s++) {
+            if (cost[0][s] < cost[0][set]) {
+                set = s;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(n + 8);
+        out.write('{');
+        out.write(SET_NAMES[set]);
+        int i = 0;
+        while (i < n) {
+            int action = step[i][set];
+            if (action >= SWITCH) {
+                set = action - SWITCH;
+                out.write('{');
+                out.write(SET_NAMES[set]);
+                action = stayStep[i][set];
+            }
+            if (action == C) {
+                out.write((text.charAt(i) - '0') * 10 + text.charAt(i + 1) - '0');
+                i += 2;
+                continue;
+            }
+            if (action == SHIFT) {
+                out.write('{');
+                out.write('S');
+            }
+            char c = text.charAt(i++);
+            if (c == '{') {
+                out.write('{');
+            }
+            out.write(c);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean inSet(char c, int set) {
+        return set == A ? c < 96 : c >= 32;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static byte[] asciiBytes(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+}
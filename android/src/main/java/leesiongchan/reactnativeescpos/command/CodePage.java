@@ -0,0 +1,83 @@
+package gmrcp.reactnativeescpos.command;
+
+/**
+ * Character code tables a printer can print text in, with the Java charset
+ * that encodes them and the command that selects them. Single byte pages are
+ * selected with FS . (leave Kanji mode) and ESC t n, multi byte pages with
+ * FS & (Kanji mode), plus FS C for the Japanese code system.
+ *
+ * @reference ESC/POS Command Reference, ESC t / FS & / FS . / FS C
+ */
+public enum CodePage {
+    CP437("IBM437", 0),
+    CP850("IBM850", 2),
+    CP860("IBM860", 3),
+    CP863("IBM863", 4),
+    CP865("IBM865", 5),
+    CP1252("windows-1252", 16),
+    CP866("IBM866", 17),
+    CP852("IBM852", 18),
+    CP858("IBM00858", 19),
+    ISO_8859_15("ISO-8859-15", 40),
+    CP1250("windows-1250", 45),
+    CP1251("windows-1251", 46),
+    CP1253("windows-1253", 47),
+    CP1254("windows-1254", 48),
+    CP1257("windows-1257", 51),
+    GBK("GBK", -1),
+    BIG5("Big5", -1),
+    EUC_KR("EUC-KR", -1),
+    SHIFT_JIS("Shift_JIS", -1);
+
+    private static final byte[] FS_and = new byte[] { 0x1c, '&' };
+    private static final byte[] FS_dot = new byte[] { 0x1c, '.' };
+    // Kept from before code pages could be chosen, GBK printers expect table 0.
+    private static final byte[] ESC_t_0 = new byte[] { 0x1b, 't', 0x00 };
+    private static final byte[] FS_C_SHIFT_JIS = new byte[] { 0x1c, 'C', 0x01 };
+
+    private final String charsetName;
+    private final int table;
+
+    CodePage(String charsetName, int table) {
+        this.charsetName = charsetName;
+        this.table = table;
+    }
+
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    public boolean isMultiByte() {
+        return table < 0;
+    }
+
+    /**
+     * @return the bytes that switch the printer to this code page.
+     */
+    public byte[] getSelectCommand() {
+        if (!isMultiByte()) {
+            return new byte[] { FS_dot[0], FS_dot[1], 0x1b, 't', (byte) table };
+        }
+        byte[] extra = this == SHIFT_JIS ? FS_C_SHIFT_JIS : new byte[0];
+        byte[] command = new byte[ESC_t_0.length + FS_and.length + extra.length];
+        System.arraycopy(ESC_t_0, 0, command, 0, ESC_t_0.length);
+        System.arraycopy(FS_and, 0, command, ESC_t_0.length, FS_and.length);
+        System.arraycopy(extra, 0, command, ESC_t_0.length + FS_and.length, extra.length);
+        return command;
+    }
+
+    /**
+     * Parses a code page name, ignoring case, '-' and '_'. Also takes Java
+     * charset names, e.g. windows-1252.
+     */
+    public static CodePage parse(String name) {
+        String key = name.replace("-", "").replace("_", "").toUpperCase();
+        for (CodePage page : values()) {
+            if (page.name().replace("_", "").equals(key)
+                    || page.charsetName.replace("-", "").replace("_", "").toUpperCase().equals(key)) {
+                return page;
+            }
+        }
+        throw new IllegalArgumentException("Unknown code page: " + name);
+    }
+}
@@ -0,0 +1,72 @@
+package gmrcp.reactnativeescpos.command;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reverse lookup tables from char to byte for the single byte code pages,
+ * built once per page by decoding all 256 bytes. A table is two levels,
+ * indexed by the high and the low byte of the char, with rows only for the
+ * blocks the page uses, so a lookup is two array reads.
+ */
+public final class CodePageTable {
+    public static final int UNMAPPED = -1;
+
+    private static final short[][][] tables = new short[CodePage.values().length][][];
+
+    private CodePageTable() {
+    }
+
+    /**
+     * @throws IllegalArgumentException for multi byte pages, or if the device
+     *                                  has no charset for page.
+     */
+    public static short[][] get(CodePage page) {
+        if (page.isMultiByte()) {
+            throw new IllegalArgumentException("No single byte table for " + page);
+        }
+        synchronized (tables) {
+            short[][] table = tables[page.ordinal()];
+            if (table == null) {
+                table = build(Charset.forName(page.getCharsetName()));
+                tables[page.ordinal()] = table;
+            }
+            return table;
+        }
+    }
+
+    /**
+     * @return the byte encoding c in table, or UNMAPPED.
+     */
+    public static int lookup(short[][] table, char c) {
+        short[] row = table[c >> 8];
+        return row == null ? UNMAPPED : row[c & 0xff];
+    }
+
+    private static short[][] build(Charset charset) {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        String decoded = new String(bytes, charset);
+
+        short[][] table = new short[256][];
+        for (int b = 0; b < decoded.length() && b < 256; b++) {
+            char c = decoded.charAt(b);
+            if (c == '\uFFFD') {
+                continue;
+            }
+            short[] row = table[c >> 8];
+            if (row == null) {
+                row = new short[256];
+                Arrays.fill(row, (short) UNMAPPED);
+                table[c >> 8] = row;
+            }
+            // Keep the first byte when two decode to the same char
+            if (row[c & 0xff] == UNMAPPED) {
+                row[c & 0xff] = (short) b;
+            }
+        }
+        return table;
+    }
+}
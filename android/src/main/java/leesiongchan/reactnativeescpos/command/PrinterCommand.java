@@ -1,12 +1,30 @@
 package gmrcp.reactnativeescpos.command;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
 public class PrinterCommand {
+    public static final int QR_CODE_MAX_DATA_LENGTH = 7089;
+    public static final int PDF417_MAX_DATA_LENGTH = 65532;
+    public static final int DATA_MATRIX_MAX_DATA_LENGTH = 3116;
+    public static final int MAXICODE_MAX_DATA_LENGTH = 138;
+    public static final int BARCODE_UPC_A = 65;
+    public static final int BARCODE_UPC_E = 66;
+    public static final int BARCODE_EAN13 = 67;
+    public static final int BARCODE_EAN8 = 68;
+    public static final int BARCODE_CODE39 = 69;
+    public static final int BARCODE_ITF = 70;
+    public static final int BARCODE_CODABAR = 71;
+    public static final int BARCODE_CODE93 = 72;
+    public static final int BARCODE_CODE128 = 73;
+    private static final String CODE39_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./";
+    private static final String CODABAR_CHARACTERS = "0123456789-$:/.+";
+    private static final String CODABAR_START_STOP = "ABCDabcd";
+
     /**
      * getBarCodeCommand
      *
-     * @param str              code
+     * @param str              code, checked against the symbology before anything is sent.
+     *                         CODE128 is encoded with the fewest symbols, see {@link Code128}.
      * @param nType            It is between 65 and 73. {65: UPC-A, 66: UPC-E, 67: EAN13, 68: EAN8, 69: CODE39, 70: ITF, 71: CODABAR, 72: CODE93, 73: CODE128}
      * @param nWidthX          width {2-6}
      * @param nHeight          height {0-255}
@@ -23,14 +41,9 @@ public class PrinterCommand {
                 | nHeight < 1 | nHeight > 255 | str.length() == 0)
             return null;
 
-        byte[] bCodeData = null;
-        try {
-            // TODO: get rid of GBK default!
-            bCodeData = str.getBytes("GBK");
-
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            return null;
+        byte[] bCodeData = nType == BARCODE_CODE128 ? Code128.encode(str) : Code128.asciiBytes(validateBarcode(str, nType));
+        if (bCodeData.length > 255) {
+            throw new IllegalArgumentException("Barcode data is too long: " + str);
         }
 
         byte[] command = new byte[bCodeData.length + 16];
@@ -56,4 +69,380 @@ public class PrinterCommand {
 
         return command;
     }
+
+    /**
+     * Checks code against the length, character set and check digit rules of
+     * the symbology, so a bad barcode fails here instead of on the printer.
+     *
+     * @return code.
+     * @throws IllegalArgumentException if code cannot be printed as nType.
+     */
+    public static String validateBarcode(String code, int nType) {
+        switch (nType) {
+            case BARCODE_UPC_A:
+                checkDigits(code, "UPC-A", 11, 12);
+                if (code.length() == 12) {
+                    checkCheckDigit(code, "UPC-A");
+                }
+                break;
+            case BARCODE_UPC_E:
+                // 6-8 digits in UPC-E form, or 11-12 in UPC-A form
+                checkDigits(code, "UPC-E", 6, 12);
+                if (code.length() == 9 || code.length() == 10) {
+                    throw new IllegalArgumentException("UPC-E needs 6 to 8, 11 or 12 digits: " + code);
+                } else if (code.length() == 8) {
+                    checkCheckDigit(expandUpcE(code) + code.charAt(7), "UPC-E");
+                } else if (code.length() == 12) {
+                    checkCheckDigit(code, "UPC-E");
+                }
+                break;
+            case BARCODE_EAN13:
+                checkDigits(code, "EAN13", 12, 13);
+                if (code.length() == 13) {
+                    checkCheckDigit(code, "EAN13");
+                }
+                break;
+            case BARCODE_EAN8:
+                checkDigits(code, "EAN8", 7, 8);
+                if (code.length() == 8) {
+                    checkCheckDigit(code, "EAN8");
+                }
+                break;
+            case BARCODE_CODE39:
+                checkCharacters(code, "CODE39", CODE39_CHARACTERS);
+                break;
+            case BARCODE_ITF:
+                checkDigits(code, "ITF", 2, 255);
+                if (code.length() % 2 != 0) {
+                    throw new IllegalArgumentException("ITF needs an even number of digits: " + code);
+                }
+                break;
+            case BARCODE_CODABAR:
+                if (code.length() < 3 || CODABAR_START_STOP.indexOf(code.charAt(0)) < 0
+                        || CODABAR_START_STOP.indexOf(code.charAt(code.length() - 1)) < 0) {
+                    throw new IllegalArgumentException("CODABAR must start and end with A, B, C or D: " + code);
+                }
+                checkCharacters(code.substring(1, code.length() - 1), "CODABAR", CODABAR_CHARACTERS);
+                break;
+            case BARCODE_CODE93:
+            case BARCODE_CODE128:
+            default:
+                for (int i = 0; i < code.length(); i++) {
+                    if (code.charAt(i) > 127) {
+                        throw new IllegalArgumentException("Barcode only encodes ASCII: " + code);
+                    }
+                }
+        }
+        return code;
+    }
+
+    private static void checkDigits(String code, String name, int minLength, int maxLength) {
+        if (code.length() < minLength || code.length() > maxLength) {
+            throw new IllegalArgumentException(name + " needs " + minLength + " to " + maxLength + " digits: " + code);
+        }
+        checkCharacters(code, name, "0123456789");
+    }
+
+    private static void checkCharacters(String code, String name, String characters) {
+        for (int i = 0; i < code.length(); i++) {
+            if (characters.indexOf(code.charAt(i)) < 0) {
+                throw new IllegalArgumentException(name + " cannot encode '" + code.charAt(i) + "': " + code);
+            }
+        }
+    }
+
+    /**
+     * Checks the last digit of a UPC / EAN code: weights 3 and 1 alternate
+     * from the rightmost data digit.
+     */
+    private static void checkCheckDigit(String code, String name) {
+        int sum = 0;
+        for (int i = code.length() - 2, weight = 3; i >= 0; i--, weight = 4 - weight) {
+            sum += (code.charAt(i) - '0') * weight;
+        }
+        if ((10 - sum % 10) % 10 != code.charAt(code.length() - 1) - '0') {
+            throw new IllegalArgumentException(name + " check digit is wrong: " + code);
+        }
+    }
+
+    /**
+     * @return the 11 UPC-A data digits an 8 digit UPC-E code stands for.
+     */
+    private static String expandUpcE(String code) {
+        if (code.charAt(0) != '0' && code.charAt(0) != '1') {
+            throw new IllegalArgumentException("UPC-E number system must be 0 or 1: " + code);
+        }
+        String d = code.substring(1, 7);
+        String body;
+        switch (d.charAt(5)) {
+            case '0':
+            case '1':
+            case '2':
+                body = d.substring(0, 2) + d.charAt(5) + "0000" + d.substring(2, 5);
+                break;
+            case '3':
+                body = d.substring(0, 3) + "00000" + d.substring(3, 5);
+                break;
+            case '4':
+                body = d.substring(0, 4) + "00000" + d.charAt(4);
+                break;
+            default:
+                body = d.substring(0, 5) + "0000" + d.charAt(5);
+        }
+        return code.charAt(0) + body;
+    }
+
+    /**
+     * Defines a raster image under a two character key in NV graphics memory
+     * (GS ( L function 67) or download graphics memory (function 83). Uses the
+     * extended GS 8 L form when the data does not fit GS ( L.
+     *
+     * @param nv       true for NV memory, false for download memory.
+     * @param key      two characters, each between 32 and 126.
+     * @param width    image width in dots.
+     * @param height   image height in dots.
+     * @param raster   packed rows, (width + 7) / 8 bytes each.
+     * @reference ESC/POS Command Reference, GS ( L / GS 8 L
+     */
+    public static byte[] getDefineGraphicsCommand(boolean nv, String key, int width, int height, byte[] raster) {
+        byte[] keyCode = getGraphicsKeyCode(key);
+        int parameters = 11 + raster.length;
+        boolean extended = parameters > 0xffff;
+        int header = extended ? 7 : 5;
+        byte[] command = new byte[header + parameters];
+
+        int i = 0;
+        command[i++] = 29;
+        if (extended) {
+            command[i++] = '8';
+            command[i++] = 'L';
+            command[i++] = (byte) parameters;
+            command[i++] = (byte) (parameters >> 8);
+            command[i++] = (byte) (parameters >> 16);
+            command[i++] = (byte) (parameters >> 24);
+        } else {
+            command[i++] = '(';
+            command[i++] = 'L';
+            command[i++] = (byte) parameters;
+            command[i++] = (byte) (parameters >> 8);
+        }
+        command[i++] = 48;
+        command[i++] = (byte) (nv ? 67 : 83);
+        command[i++] = 48;
+        command[i++] = keyCode[0];
+        command[i++] = keyCode[1];
+        command[i++] = 1;
+        command[i++] = (byte) width;
+        command[i++] = (byte) (width >> 8);
+        command[i++] = (byte) height;
+        command[i++] = (byte) (height >> 8);
+        command[i++] = 49;
+        System.arraycopy(raster, 0, command, i, raster.length);
+
+        return command;
+    }
+
+    /**
+     * Prints graphics stored under key, from NV memory (GS ( L function 69) or
+     * download memory (function 85), at normal size.
+     */
+    public static byte[] getPrintGraphicsCommand(boolean nv, String key) {
+        byte[] keyCode = getGraphicsKeyCode(key);
+        return new byte[] { 29, '(', 'L', 6, 0, 48, (byte) (nv ? 69 : 85), keyCode[0], keyCode[1], 1, 1 };
+    }
+
+    /**
+     * Deletes the NV graphics stored under key (GS ( L function 66).
+     */
+    public static byte[] getDeleteGraphicsCommand(String key) {
+        byte[] keyCode = getGraphicsKeyCode(key);
+        return new byte[] { 29, '(', 'L', 4, 0, 48, 66, keyCode[0], keyCode[1] };
+    }
+
+    /**
+     * Defines NV bit images 1..n with FS q, the command older printers use.
+     * FS q replaces every image defined before, so all of them must be sent
+     * together.
+     *
+     * @param widths     width of each image in dots.
+     * @param heights    height of each image in dots.
+     * @param columnData each image in column format, see
+     *                   {@link gmrcp.reactnativeescpos.utils.Bitplane#toColumnData()}.
+     */
+    public static byte[] getLegacyDefineImagesCommand(int[] widths, int[] heights, byte[][] columnData) {
+        int length = 3;
+        for (byte[] data : columnData) {
+            length += 4 + data.length;
+        }
+        byte[] command = new byte[length];
+        command[0] = 28;
+        command[1] = 'q';
+        command[2] = (byte) columnData.length;
+
+        int i = 3;
+        for (int n = 0; n < columnData.length; n++) {
+            int x = (widths[n] + 7) >> 3;
+            int y = (heights[n] + 7) >> 3;
+            command[i++] = (byte) x;
+            command[i++] = (byte) (x >> 8);
+            command[i++] = (byte) y;
+            command[i++] = (byte) (y >> 8);
+            System.arraycopy(columnData[n], 0, command, i, columnData[n].length);
+            i += columnData[n].length;
+        }
+
+        return command;
+    }
+
+    /**
+     * Prints NV bit image n (1-255) defined with FS q, at normal size.
+     */
+    public static byte[] getLegacyPrintImageCommand(int n) {
+        return new byte[] { 28, 'p', (byte) n, 0 };
+    }
+
+    /**
+     * Has the printer encode and print a QR code itself (GS ( k, cn 49): model
+     * 2, the given module size and error correction, then store and print the
+     * data. The data is sent as UTF-8.
+     *
+     * @param moduleSize      dots per module, 1-16.
+     * @param errorCorrection 0: L (7%), 1: M (15%), 2: Q (25%), 3: H (30%).
+     * @reference ESC/POS Command Reference, GS ( k function 165-181
+     */
+    public static byte[] getQRCodeCommand(String data, int moduleSize, int errorCorrection) {
+        checkRange("QR code module size", moduleSize, 1, 16);
+        checkRange("QR code error correction", errorCorrection, 0, 3);
+        return getSymbolCommand(49, QR_CODE_MAX_DATA_LENGTH, data,
+                // Model 2
+                new int[] { 65, 50, 0 },
+                // Module size
+                new int[] { 67, moduleSize },
+                // Error correction level
+                new int[] { 69, 48 + errorCorrection });
+    }
+
+    /**
+     * Has the printer encode and print a PDF417 symbol (GS ( k, cn 48) with
+     * automatic columns and rows. The data is sent as UTF-8.
+     *
+     * @param moduleWidth     module width in dots, 2-8.
+     * @param rowHeight       row height as a multiple of the module width, 2-8.
+     * @param errorCorrection error correction level, 0-8.
+     * @reference ESC/POS Command Reference, GS ( k function 065-081
+     */
+    public static byte[] getPDF417Command(String data, int moduleWidth, int rowHeight, int errorCorrection) {
+        checkRange("PDF417 module width", moduleWidth, 2, 8);
+        checkRange("PDF417 row height", rowHeight, 2, 8);
+        checkRange("PDF417 error correction", errorCorrection, 0, 8);
+        return getSymbolCommand(48, PDF417_MAX_DATA_LENGTH, data,
+                // Columns and rows, automatic
+                new int[] { 65, 0 },
+                new int[] { 66, 0 },
+                new int[] { 67, moduleWidth },
+                new int[] { 68, rowHeight },
+                // Error correction by level
+                new int[] { 69, 48, 48 + errorCorrection },
+                // Standard PDF417
+                new int[] { 70, 0 });
+    }
+
+    /**
+     * Has the printer encode and print a square DataMatrix symbol (GS ( k,
+     * cn 54) of automatic size. The data is sent as UTF-8.
+     *
+     * @param moduleSize dots per module, 2-16.
+     * @reference ESC/POS Command Reference, GS ( k function 266-281
+     */
+    public static byte[] getDataMatrixCommand(String data, int moduleSize) {
+        checkRange("DataMatrix module size", moduleSize, 2, 16);
+        return getSymbolCommand(54, DATA_MATRIX_MAX_DATA_LENGTH, data,
+                // ECC 200 square, automatic size
+                new int[] { 66, 48, 0, 0 },
+                new int[] { 67, moduleSize });
+    }
+
+    /**
+     * Has the printer encode and print a MaxiCode symbol (GS ( k, cn 50).
+     * MaxiCode has a fixed size.
+     *
+     * @param mode MaxiCode mode, 2-6.
+     * @reference ESC/POS Command Reference, GS ( k function 265-281
+     */
+    public static byte[] getMaxiCodeCommand(String data, int mode) {
+        checkRange("MaxiCode mode", mode, 2, 6);
+        return getSymbolCommand(50, MAXICODE_MAX_DATA_LENGTH, data,
+                new int[] { 65, 48 + mode });
+    }
+
+    /**
+     * Builds a GS ( k symbol: the setting functions, each given as fn followed
+     * by its one byte parameters, then store (fn 80) and print (fn 81).
+     */
+    private static byte[] getSymbolCommand(int cn, int maxDataLength, String data, int[]... settings) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > maxDataLength) {
+            throw new IllegalArgumentException("Symbol data must be 1 to " + maxDataLength + " bytes");
+        }
+
+        int length = 8 + bytes.length + 8;
+        for (int[] setting : settings) {
+            length += 6 + setting.length;
+        }
+        byte[] command = new byte[length];
+        int i = 0;
+        for (int[] setting : settings) {
+            i = putSymbolFunction(command, i, cn, setting);
+        }
+        // Store the data in the symbol storage area
+        int store = bytes.length + 3;
+        command[i++] = 29;
+        command[i++] = '(';
+        command[i++] = 'k';
+        command[i++] = (byte) store;
+        command[i++] = (byte) (store >> 8);
+        command[i++] = (byte) cn;
+        command[i++] = 80;
+        command[i++] = 48;
+        System.arraycopy(bytes, 0, command, i, bytes.length);
+        i += bytes.length;
+        // Print
+        putSymbolFunction(command, i, cn, new int[] { 81, 48 });
+
+        return command;
+    }
+
+    /**
+     * Puts GS ( k cn fn followed by its one byte parameters at offset.
+     *
+     * @param function fn followed by the parameters.
+     * @return the offset after the function.
+     */
+    private static int putSymbolFunction(byte[] command, int offset, int cn, int[] function) {
+        int length = 1 + function.length;
+        command[offset++] = 29;
+        command[offset++] = '(';
+        command[offset++] = 'k';
+        command[offset++] = (byte) length;
+        command[offset++] = (byte) (length >> 8);
+        command[offset++] = (byte) cn;
+        for (int value : function) {
+            command[offset++] = (byte) value;
+        }
+        return offset;
+    }
+
+    private static void checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + ": " + value);
+        }
+    }
+
+    private static byte[] getGraphicsKeyCode(String key) {
+        if (key == null || key.length() != 2 || key.charAt(0) < 32 || key.charAt(0) > 126
+                || key.charAt(1) < 32 || key.charAt(1) > 126) {
+            throw new IllegalArgumentException("Graphics key must be two printable ASCII characters: " + key);
+        }
+        return new byte[] { (byte) key.charAt(0), (byte) key.charAt(1) };
+    }
 }
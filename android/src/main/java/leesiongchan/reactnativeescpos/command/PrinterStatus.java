@@ -0,0 +1,216 @@
+package gmrcp.reactnativeescpos.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a printer reported about itself, read from the replies to DLE EOT 1
+ * to 4 (real-time status) or from a GS a Automatic Status Back message.
+ * Printers lacking a sensor report it as fine, e.g. paperNearEnd without a
+ * near-end sensor.
+ *
+ * @reference ESC/POS Command Reference, DLE EOT and GS a
+ */
+public class PrinterStatus {
+    private static final byte DLE = 0x10;
+    private static final byte EOT = 0x04;
+    private static final byte GS = 0x1d;
+    // GS a n: report drawer, online, error and paper roll sensor changes
+    private static final int AUTOMATIC_STATUS_BACK_ALL = 0x0f;
+    // Bits 1 and 4 of a DLE EOT reply are always set, 0 and 7 never
+    private static final int REPLY_FIXED_MASK = 0x93;
+    private static final int REPLY_FIXED_BITS = 0x12;
+    // The first byte of an ASB message has bit 4 set, 0, 1 and 7 clear
+    private static final int ASB_FIXED_BITS = 0x10;
+    public static final int ASB_LENGTH = 4;
+
+    private final boolean online;
+    private final boolean drawerOpen;
+    private final boolean coverOpen;
+    private final boolean paperFeeding;
+    private final boolean paperOut;
+    private final boolean paperNearEnd;
+    private final boolean cutterError;
+    private final boolean unrecoverableError;
+    private final boolean recoverableError;
+
+    public PrinterStatus(boolean online, boolean drawerOpen, boolean coverOpen, boolean paperFeeding,
+            boolean paperOut, boolean paperNearEnd, boolean cutterError, boolean unrecoverableError,
+            boolean recoverableError) {
+        this.online = online;
+        this.drawerOpen = drawerOpen;
+        this.coverOpen = coverOpen;
+        this.paperFeeding = paperFeeding;
+        this.paperOut = paperOut;
+        this.paperNearEnd = paperNearEnd;
+        this.cutterError = cutterError;
+        this.unrecoverableError = unrecoverableError;
+        this.recoverableError = recoverableError;
+    }
+
+    /**
+     * @param n 1 for the printer, 2 for the offline cause, 3 for the error
+     *          and 4 for the paper roll sensor status.
+     * @return DLE EOT n.
+     */
+    public static byte[] request(int n) {
+        if (n < 1 || n > 4) {
+            throw new IllegalArgumentException("DLE EOT status must be 1 to 4: " + n);
+        }
+        return new byte[]{DLE, EOT, (byte) n};
+    }
+
+    /**
+     * @return GS a n, enabling Automatic Status Back for every status change, or disabling it.
+     */
+    public static byte[] automaticStatusBack(boolean enabled) {
+        return new byte[]{GS, 'a', (byte) (enabled ? AUTOMATIC_STATUS_BACK_ALL : 0)};
+    }
+
+    /**
+     * @return whether b can be a reply to DLE EOT.
+     */
+    public static boolean isReply(int b) {
+        return (b & REPLY_FIXED_MASK) == REPLY_FIXED_BITS;
+    }
+
+    /**
+     * @return whether b can start an Automatic Status Back message.
+     */
+    public static boolean isAutomaticStatusBackStart(int b) {
+        return (b & REPLY_FIXED_MASK) == ASB_FIXED_BITS;
+    }
+
+    /**
+     * @param replies the replies to DLE EOT 1, 2, 3 and 4.
+     */
+    public static PrinterStatus fromRealTime(byte[] replies) {
+        int printer = replies[0];
+        int offline = replies[1];
+        int error = replies[2];
+        int paper = replies[3];
+        return new PrinterStatus((printer & 0x08) == 0, (printer & 0x04) != 0, (offline & 0x04) != 0,
+                (offline & 0x08) != 0, (paper & 0x60) != 0 || (offline & 0x20) != 0, (paper & 0x0c) != 0,
+                (error & 0x08) != 0, (error & 0x20) != 0, (error & 0x40) != 0);
+    }
+
+    /**
+     * @param message the 4 bytes of an Automatic Status Back message.
+     */
+    public static PrinterStatus fromAutomaticStatusBack(byte[] message) {
+        int first = message[0];
+        int error = message[1];
+        int paper = message[2];
+        return new PrinterStatus((first & 0x08) == 0, (first & 0x04) != 0, (first & 0x20) != 0,
+                (first & 0x40) != 0, (paper & 0x0c) != 0, (paper & 0x03) != 0, (error & 0x08) != 0,
+                (error & 0x20) != 0, (error & 0x40) != 0);
+    }
+
+    /**
+     * @return whether a job sent now would print.
+     */
+    public boolean isReady() {
+        return online && !coverOpen && !paperOut && !cutterError && !unrecoverableError && !recoverableError;
+    }
+
+    /**
+     * @return what keeps the printer from printing, e.g. "paper out", empty when ready.
+     */
+    public List<String> getProblems() {
+        List<String> problems = new ArrayList<>();
+        if (paperOut) {
+            problems.add("paper out");
+        }
+        if (coverOpen) {
+            problems.add("cover open");
+        }
+        if (cutterError) {
+            problems.add("cutter error");
+        }
+        if (unrecoverableError) {
+            problems.add("unrecoverable error");
+        }
+        if (recoverableError) {
+            problems.add("recoverable error");
+        }
+        if (!online && problems.isEmpty()) {
+            problems.add("offline");
+        }
+        return problems;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * @return whether the drawer kick-out connector pin 3 is high, which
+     * depending on the drawer means it is open or closed.
+     */
+    public boolean isDrawerOpen() {
+        return drawerOpen;
+    }
+
+    public boolean isCoverOpen() {
+        return coverOpen;
+    }
+
+    public boolean isPaperFeeding() {
+        return paperFeeding;
+    }
+
+    public boolean isPaperOut() {
+        return paperOut;
+    }
+
+    public boolean isPaperNearEnd() {
+        return paperNearEnd;
+    }
+
+    public boolean isCutterError() {
+        return cutterError;
+    }
+
+    public boolean isUnrecoverableError() {
+        return unrecoverableError;
+    }
+
+    public boolean isRecoverableError() {
+        return recoverableError;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PrinterStatus)) {
+            return false;
+        }
+        return bits() == ((PrinterStatus) o).bits();
+    }
+
+    @Override
+    public int hashCode() {
+        return bits();
+    }
+
+    @Override
+    public String toString() {
+        if (isReady()) {
+            return paperNearEnd ? "ready, paper near end" : "ready";
+        }
+        StringBuilder text = new StringBuilder();
+        for (String problem : getProblems()) {
+            text.append(text.length() > 0 ? ", " : "").append(problem);
+        }
+        return text.toString();
+    }
+
+    private int bits() {
+        boolean[] flags = {online, drawerOpen, coverOpen, paperFeeding, paperOut, paperNearEnd, cutterError,
+                unrecoverableError, recoverableError};
+        int bits = 0;
+        for (int i = 0; i < flags.length; i++) {
+            bits |= flags[i] ? 1 << i : 0;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,9 @@
+package gmrcp.reactnativeescpos.command;
+
+/**
+ * 2D symbologies besides QR code that printers can encode themselves with
+ * GS ( k, see {@link PrinterCommand}.
+ */
+public enum Symbology {
+    PDF417, DATA_MATRIX, MAXICODE
+}
@@ -0,0 +1,74 @@
+package gmrcp.reactnativeescpos.design;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gmrcp.reactnativeescpos.LayoutBuilder;
+import gmrcp.reactnativeescpos.TableLayout;
+
+/**
+ * Parses design markup into a {@link DesignTemplate} in a single scan. See
+ * {@link gmrcp.reactnativeescpos.PrinterService} for the supported tags.
+ */
+public class DesignCompiler {
+    private DesignCompiler() {
+    }
+
+    public static DesignTemplate compile(String design) {
+        String text = design.trim();
+        DesignTokenizer tokenizer = new DesignTokenizer();
+        List<DesignLine> lines = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        TableLayout table = null;
+
+        while (start < length) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            // {TABLE:spec} and {/TABLE} lines only mark the block, they print nothing
+            String tableSpec = LayoutBuilder.getTableSpec(text, start, end);
+            if (tableSpec != null) {
+                table = TableLayout.parse(tableSpec);
+            } else if (LayoutBuilder.isTableEnd(text, start, end)) {
+                table = null;
+            } else {
+                lines.add(compileLine(tokenizer, text, start, end, table));
+            }
+
+            if (end < length - 1 && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+
+        return new DesignTemplate(lines);
+    }
+
+    private static DesignLine compileLine(DesignTokenizer tokenizer, String text, int start, int end,
+            TableLayout table) {
+        tokenizer.tokenize(text, start, end);
+
+        return new DesignLine(
+            tokenizer.getStyles(),
+            TemplateText.parse(tokenizer.getText()),
+            parseOrNull(tokenizer.getQRCode()),
+            tokenizer.getQRModuleSize(),
+            tokenizer.getQRErrorCorrection(),
+            parseOrNull(tokenizer.getBarcode()),
+            parseOrNull(tokenizer.getImage()),
+            tokenizer.getImageWidthOffset(),
+            tokenizer.getImageDitherMode(),
+            parseOrNull(tokenizer.getLogo()),
+            parseOrNull(tokenizer.getSymbol()),
+            tokenizer.getSymbology(),
+            tokenizer.getSymbolSize(),
+            table
+        );
+    }
+
+    private static TemplateText parseOrNull(String text) {
+        return text == null ? null : TemplateText.parse(text);
+    }
+}
@@ -0,0 +1,142 @@
+package gmrcp.reactnativeescpos.design;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import gmrcp.reactnativeescpos.TableLayout;
+import gmrcp.reactnativeescpos.command.Symbology;
+import gmrcp.reactnativeescpos.utils.Ditherer;
+
+/**
+ * One compiled line of a design: the style tags found on it, plus either the
+ * text to lay out or the QR code / barcode / image / logo / 2D symbol nodes to
+ * print instead.
+ */
+public class DesignLine {
+    public static final int BOLD = 1;
+    public static final int UNDERLINE = 1 << 1;
+    public static final int H1 = 1 << 2;
+    public static final int H2 = 1 << 3;
+    public static final int H3 = 1 << 4;
+    public static final int LINE_SPACE_M = 1 << 5;
+    public static final int LINE_SPACE_L = 1 << 6;
+    public static final int CENTER = 1 << 7;
+    public static final int RIGHT = 1 << 8;
+
+    private final int styles;
+    private final TemplateText text;
+    private final TemplateText qrCode;
+    private final int qrModuleSize;
+    private final ErrorCorrectionLevel qrErrorCorrection;
+    private final TemplateText barcode;
+    private final TemplateText image;
+    private final int imageWidthOffset;
+    private final Ditherer.Mode imageDitherMode;
+    private final TemplateText logo;
+    private final TemplateText symbol;
+    private final Symbology symbology;
+    private final int symbolSize;
+    private final TableLayout table;
+
+    DesignLine(int styles, TemplateText text, TemplateText qrCode, int qrModuleSize,
+            ErrorCorrectionLevel qrErrorCorrection, TemplateText barcode, TemplateText image, int imageWidthOffset,
+            Ditherer.Mode imageDitherMode, TemplateText logo, TemplateText symbol, Symbology symbology,
+            int symbolSize, TableLayout table) {
+        this.styles = styles;
+        this.text = text;
+        this.qrCode = qrCode;
+        this.qrModuleSize = qrModuleSize;
+        this.qrErrorCorrection = qrErrorCorrection;
+        this.barcode = barcode;
+        this.image = image;
+        this.imageWidthOffset = imageWidthOffset;
+        this.imageDitherMode = imageDitherMode;
+        this.logo = logo;
+        this.symbol = symbol;
+        this.symbology = symbology;
+        this.symbolSize = symbolSize;
+        this.table = table;
+    }
+
+    public boolean hasStyle(int style) {
+        return (styles & style) != 0;
+    }
+
+    public boolean hasText() {
+        return qrCode == null && barcode == null && image == null && logo == null && symbol == null;
+    }
+
+    public TemplateText getText() {
+        return text;
+    }
+
+    public TemplateText getQRCode() {
+        return qrCode;
+    }
+
+    /**
+     * @return the module size given in the QR tag, or 0 if none was given.
+     */
+    public int getQRModuleSize() {
+        return qrModuleSize;
+    }
+
+    /**
+     * @return the error correction level given in the QR tag, or null if none was given.
+     */
+    public ErrorCorrectionLevel getQRErrorCorrection() {
+        return qrErrorCorrection;
+    }
+
+    public TemplateText getBarcode() {
+        return barcode;
+    }
+
+    public TemplateText getImage() {
+        return image;
+    }
+
+    public int getImageWidthOffset() {
+        return imageWidthOffset;
+    }
+
+    /**
+     * @return the dither mode given in the image tag, or null if none was given.
+     */
+    public Ditherer.Mode getImageDitherMode() {
+        return imageDitherMode;
+    }
+
+    /**
+     * @return the key of a logo stored in the printer, see {@link gmrcp.reactnativeescpos.helpers.LogoRegistry}.
+     */
+    public TemplateText getLogo() {
+        return logo;
+    }
+
+    /**
+     * @return the data of a PDF417, DataMatrix or MaxiCode symbol, see {@link #getSymbology()}.
+     */
+    public TemplateText getSymbol() {
+        return symbol;
+    }
+
+    public Symbology getSymbology() {
+        return symbology;
+    }
+
+    /**
+     * @return the module size (PDF417, DataMatrix) or mode (MaxiCode) given in
+     * the tag, or 0 if none was given.
+     */
+    public int getSymbolSize() {
+        return symbolSize;
+    }
+
+    /**
+     * @return the table of the {TABLE:..} block the line is in, or null. The
+     * line's text is then a row of {<>} separated cells.
+     */
+    public TableLayout getTable() {
+        return table;
+    }
+}
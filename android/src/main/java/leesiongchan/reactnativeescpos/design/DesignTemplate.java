@@ -0,0 +1,20 @@
+package gmrcp.reactnativeescpos.design;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A design parsed once by {@link DesignCompiler}, ready to be rendered any
+ * number of times with different ${var} values.
+ */
+public class DesignTemplate {
+    private final List<DesignLine> lines;
+
+    DesignTemplate(List<DesignLine> lines) {
+        this.lines = Collections.unmodifiableList(lines);
+    }
+
+    public List<DesignLine> getLines() {
+        return lines;
+    }
+}
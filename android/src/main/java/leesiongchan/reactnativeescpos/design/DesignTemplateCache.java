@@ -0,0 +1,55 @@
+package gmrcp.reactnativeescpos.design;
+
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps compiled designs around so that repeated prints skip parsing.
+ * Templates registered by id stay until they are removed; ad-hoc designs are
+ * cached by their text in a small LRU.
+ */
+public class DesignTemplateCache {
+    private static final int DEFAULT_MAX_DESIGNS = 32;
+
+    private final Map<String, DesignTemplate> templates = new HashMap<>();
+    private final LruCache<String, DesignTemplate> designs;
+
+    public DesignTemplateCache() {
+        this(DEFAULT_MAX_DESIGNS);
+    }
+
+    public DesignTemplateCache(int maxDesigns) {
+        designs = new LruCache<>(maxDesigns);
+    }
+
+    public DesignTemplate register(String templateId, String design) {
+        DesignTemplate template = DesignCompiler.compile(design);
+        synchronized (templates) {
+            templates.put(templateId, template);
+        }
+        return template;
+    }
+
+    public void unregister(String templateId) {
+        synchronized (templates) {
+            templates.remove(templateId);
+        }
+    }
+
+    public DesignTemplate get(String templateId) {
+        synchronized (templates) {
+            return templates.get(templateId);
+        }
+    }
+
+    public DesignTemplate compile(String design) {
+        DesignTemplate template = designs.get(design);
+        if (template == null) {
+            template = DesignCompiler.compile(design);
+            designs.put(design, template);
+        }
+        return template;
+    }
+}
@@ -0,0 +1,292 @@
+package gmrcp.reactnativeescpos.design;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gmrcp.reactnativeescpos.command.Symbology;
+import gmrcp.reactnativeescpos.utils.Ditherer;
+
+/**
+ * Single pass scanner for one design line. Style tags are turned into
+ * {@link DesignLine} flags and dropped from the text, node tags
+ * ({QR[..]}, {BC[..]}, {IMG[..]}, {LOGO[..]}, {PDF417[..]}, {DM[..]},
+ * {MAXI[..]}) have their arguments captured, and every
+ * other character, including layout tags like {<>} and ${var} slots, is
+ * copied to the clean text unchanged.
+ */
+class DesignTokenizer {
+    private static final String[] STYLE_TAGS = {
+        "{B}", "{U}", "{H1}", "{H2}", "{H3}", "{LS:M}", "{LS:L}", "{C}", "{R}"
+    };
+    private static final int[] STYLES = {
+        DesignLine.BOLD, DesignLine.UNDERLINE, DesignLine.H1, DesignLine.H2, DesignLine.H3,
+        DesignLine.LINE_SPACE_M, DesignLine.LINE_SPACE_L, DesignLine.CENTER, DesignLine.RIGHT
+    };
+    private static final int MAX_STYLE_TAG_LENGTH = 6;
+    private static final String QR_TAG = "{QR[";
+    private static final String BC_TAG = "{BC[";
+    private static final String IMG_TAG = "{IMG[";
+    private static final String LOGO_TAG = "{LOGO[";
+    private static final String[] SYMBOL_TAGS = { "{PDF417[", "{DM[", "{MAXI[" };
+    private static final Symbology[] SYMBOLOGIES = { Symbology.PDF417, Symbology.DATA_MATRIX, Symbology.MAXICODE };
+
+    private final StringBuilder text = new StringBuilder();
+    private int styles;
+    private final List<String> options = new ArrayList<>();
+    private String qrCode;
+    private int qrModuleSize;
+    private ErrorCorrectionLevel qrErrorCorrection;
+    private String barcode;
+    private String image;
+    private int imageWidthOffset;
+    private Ditherer.Mode imageDitherMode;
+    private String logo;
+    private String symbol;
+    private Symbology symbology;
+    private int symbolSize;
+
+    /**
+     * Scans design.substring(start, end) without copying it.
+     */
+    void tokenize(String design, int start, int end) {
+        text.setLength(0);
+        styles = 0;
+        qrCode = null;
+        qrModuleSize = 0;
+        qrErrorCorrection = null;
+        barcode = null;
+        image = null;
+        imageWidthOffset = 0;
+        imageDitherMode = null;
+        logo = null;
+        symbol = null;
+        symbology = null;
+        symbolSize = 0;
+
+        int i = start;
+        while (i < end) {
+            char c = design.charAt(i);
+            if (c != '{' || (i > start && design.charAt(i - 1) == '$')) {
+                text.append(c);
+                i++;
+                continue;
+            }
+
+            int next = matchStyleTag(design, i, end);
+            if (next < 0) {
+                next = matchNodeTag(design, i, end);
+            }
+            if (next < 0) {
+                text.append(c);
+                i++;
+            } else {
+                i = next;
+            }
+        }
+    }
+
+    private int matchStyleTag(String design, int at, int end) {
+        int limit = Math.min(end, at + MAX_STYLE_TAG_LENGTH);
+        for (int close = at + 2; close < limit; close++) {
+            if (design.charAt(close) != '}') {
+                continue;
+            }
+            int length = close - at + 1;
+            for (int t = 0; t < STYLE_TAGS.length; t++) {
+                if (STYLE_TAGS[t].length() == length && design.regionMatches(at, STYLE_TAGS[t], 0, length)) {
+                    styles |= STYLES[t];
+                    return close + 1;
+                }
+            }
+            return -1;
+        }
+        return -1;
+    }
+
+    private int matchNodeTag(String design, int at, int end) {
+        if (design.regionMatches(at, QR_TAG, 0, QR_TAG.length())) {
+            int close = indexOfArgumentEnd(design, at + QR_TAG.length(), end, true);
+            if (close >= 0) {
+                qrCode = design.substring(at + QR_TAG.length(), close);
+                // {QR[data]:moduleSize:errorCorrection}, options in any order
+                int next = readOptions(design, close + 1, end);
+                for (String option : options) {
+                    if (isNumber(option)) {
+                        qrModuleSize = Integer.parseInt(option);
+                    } else {
+                        qrErrorCorrection = parseErrorCorrection(option);
+                    }
+                }
+                return next;
+            }
+        } else if (design.regionMatches(at, BC_TAG, 0, BC_TAG.length())) {
+            int close = indexOfArgumentEnd(design, at + BC_TAG.length(), end, false);
+            if (close >= 0) {
+                barcode = design.substring(at + BC_TAG.length(), close);
+                return close + 2;
+            }
+        } else if (design.regionMatches(at, LOGO_TAG, 0, LOGO_TAG.length())) {
+            int close = indexOfArgumentEnd(design, at + LOGO_TAG.length(), end, false);
+            if (close >= 0) {
+                logo = design.substring(at + LOGO_TAG.length(), close);
+                return close + 2;
+            }
+        } else if (design.regionMatches(at, IMG_TAG, 0, IMG_TAG.length())) {
+            int close = indexOfArgumentEnd(design, at + IMG_TAG.length(), end, true);
+            if (close >= 0) {
+                image = design.substring(at + IMG_TAG.length(), close);
+                // {IMG[path]:offset:dither}, options in any order
+                int next = readOptions(design, close + 1, end);
+                for (String option : options) {
+                    if (isNumber(option)) {
+                        imageWidthOffset = Integer.parseInt(option);
+                    } else {
+                        imageDitherMode = Ditherer.Mode.parse(option);
+                    }
+                }
+                return next;
+            }
+        } else {
+            for (int t = 0; t < SYMBOL_TAGS.length; t++) {
+                String tag = SYMBOL_TAGS[t];
+                if (!design.regionMatches(at, tag, 0, tag.length())) {
+                    continue;
+                }
+                int close = indexOfArgumentEnd(design, at + tag.length(), end, true);
+                if (close < 0) {
+                    return -1;
+                }
+                symbol = design.substring(at + tag.length(), close);
+                symbology = SYMBOLOGIES[t];
+                // {PDF417[data]:moduleWidth}, {DM[data]:moduleSize}, {MAXI[data]:mode}
+                int next = readOptions(design, close + 1, end);
+                for (String option : options) {
+                    if (!isNumber(option)) {
+                        throw new IllegalArgumentException("Invalid " + tag.substring(1, tag.length() - 1)
+                                + " option: " + option);
+                    }
+                    symbolSize = Integer.parseInt(option);
+                }
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the ':' separated options between the argument's closing ']'
+     * at and the tag's closing '}' into options.
+     *
+     * @return the index after the tag.
+     */
+    private int readOptions(String design, int at, int end) {
+        options.clear();
+        if (design.charAt(at) == '}') {
+            return at + 1;
+        }
+        int i = at + 1;
+        while (i < end && design.charAt(i) != '}') {
+            int optionStart = i;
+            while (i < end && design.charAt(i) != ':' && design.charAt(i) != '}') {
+                i++;
+            }
+            if (i > optionStart) {
+                options.add(design.substring(optionStart, i));
+            }
+            if (i < end && design.charAt(i) == ':') {
+                i++;
+            }
+        }
+        return Math.min(i + 1, end);
+    }
+
+    private static boolean isNumber(String option) {
+        if (option.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < option.length(); i++) {
+            if (!Character.isDigit(option.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ErrorCorrectionLevel parseErrorCorrection(String option) {
+        try {
+            return ErrorCorrectionLevel.valueOf(option.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown QR error correction level: " + option, e);
+        }
+    }
+
+    /**
+     * Finds the ']' closing a tag argument, i.e. the first one followed by '}'
+     * (or by ':' when options are allowed).
+     */
+    private static int indexOfArgumentEnd(String design, int from, int end, boolean allowOptions) {
+        for (int i = from; i < end - 1; i++) {
+            if (design.charAt(i) == ']') {
+                char next = design.charAt(i + 1);
+                if (next == '}' || (allowOptions && next == ':')) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    int getStyles() {
+        return styles;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    String getQRCode() {
+        return qrCode;
+    }
+
+    int getQRModuleSize() {
+        return qrModuleSize;
+    }
+
+    ErrorCorrectionLevel getQRErrorCorrection() {
+        return qrErrorCorrection;
+    }
+
+    String getBarcode() {
+        return barcode;
+    }
+
+    String getImage() {
+        return image;
+    }
+
+    int getImageWidthOffset() {
+        return imageWidthOffset;
+    }
+
+    Ditherer.Mode getImageDitherMode() {
+        return imageDitherMode;
+    }
+
+    String getLogo() {
+        return logo;
+    }
+
+    String getSymbol() {
+        return symbol;
+    }
+
+    Symbology getSymbology() {
+        return symbology;
+    }
+
+    int getSymbolSize() {
+        return symbolSize;
+    }
+}
@@ -0,0 +1,70 @@
+package gmrcp.reactnativeescpos.design;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A piece of design text split into literal runs and ${var} slots.
+ * Text without slots resolves to the same String instance every time.
+ */
+public class TemplateText {
+    private static final String SLOT_START = "${";
+    private static final char SLOT_END = '}';
+
+    private final String[] literals;
+    private final String[] slots;
+
+    private TemplateText(String[] literals, String[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    public static TemplateText parse(String text) {
+        if (text.indexOf(SLOT_START) < 0) {
+            return new TemplateText(new String[] { text }, new String[0]);
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(SLOT_START, from)) >= 0) {
+            int end = text.indexOf(SLOT_END, start + SLOT_START.length());
+            if (end < 0) {
+                break;
+            }
+            literals.add(text.substring(from, start));
+            slots.add(text.substring(start + SLOT_START.length(), end).trim());
+            from = end + 1;
+        }
+        literals.add(text.substring(from));
+
+        return new TemplateText(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    public boolean isStatic() {
+        return slots.length == 0;
+    }
+
+    /**
+     * Fills the slots from values. Missing values resolve to an empty string.
+     */
+    public String resolve(Map<String, String> values) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            String value = values == null ? null : values.get(slots[i]);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals[slots.length]);
+
+        return out.toString();
+    }
+}
@@ -8,9 +8,13 @@ import android.graphics.Paint;
 import android.os.Handler;
 
 import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 // @ref https://gist.github.com/douglasjunior/dc3b41908514304f694f1b37cadf2df7
 public class EscPosHelper {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * Collect a slice of 3 bytes with 24 dots for image printing.
      *
@@ -95,12 +99,36 @@ public class EscPosHelper {
         g = (color >> 8) & 0xff;
         b = color & 0xff;
 
-        luminance = (int) (0.299 * r + 0.587 * g + 0.114 * b);
+        luminance = (r * 77 + g * 150 + b * 29) >> 8;
 
         return luminance < threshold;
     }
     
 
+    /**
+     * @return SHA-1 of the given parts, as lowercase hex.
+     */
+    public static String sha1Hex(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
     public static Object setTimeout(Runnable runnable, long delay) {
         TimeoutEvent te =  new TimeoutEvent(runnable, delay);
         return te;
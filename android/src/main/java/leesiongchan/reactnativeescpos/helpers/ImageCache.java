@@ -0,0 +1,225 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Cache of ready to send ESC/POS image bytes, shared by all printers. The key
+ * covers the source file (path, size and modification time) and everything
+ * that changes the output, so a changed file is simply a miss. Entries live in
+ * a byte-bounded LRU and, when enabled, in an on-disk tier in the app cache
+ * directory.
+ */
+public class ImageCache {
+    private static final String LOG_TAG = ImageCache.class.getSimpleName();
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_DISK_BYTES = 16 * 1024 * 1024;
+    private static ImageCache instance;
+
+    private LruCache<String, byte[]> memory;
+    private File diskDirectory;
+    private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+    private int hits = 0;
+    private int diskHits = 0;
+    private int misses = 0;
+    private int diskEvictions = 0;
+
+    private ImageCache(int maxBytes) {
+        memory = createMemoryCache(maxBytes);
+    }
+
+    public static synchronized ImageCache getInstance() {
+        if (instance == null) {
+            instance = new ImageCache(DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    private static LruCache<String, byte[]> createMemoryCache(int maxBytes) {
+        return new LruCache<String, byte[]>(Math.max(maxBytes, 1)) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache key for an image file rendered with the given options.
+     * Anything that changes the output bytes must be part of options.
+     */
+    public static String key(File file, String options) {
+        return file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified() + '|' + options;
+    }
+
+    public synchronized byte[] get(String key) {
+        byte[] bytes = memory.get(key);
+        if (bytes != null) {
+            hits++;
+            return bytes;
+        }
+        bytes = readFromDisk(key);
+        if (bytes != null) {
+            diskHits++;
+            memory.put(key, bytes);
+            return bytes;
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String key, byte[] bytes) {
+        // An entry bigger than the whole cache would only flush everything else.
+        if (bytes.length <= memory.maxSize() / 2) {
+            memory.put(key, bytes);
+        }
+        writeToDisk(key, bytes);
+    }
+
+    public synchronized void setMaxBytes(int maxBytes) {
+        if (maxBytes != memory.maxSize()) {
+            memory.evictAll();
+            memory = createMemoryCache(maxBytes);
+        }
+    }
+
+    /**
+     * Enables the on-disk tier in directory, or disables it when directory is null.
+     */
+    public synchronized void setDiskCache(File directory, long maxDiskBytes) {
+        this.diskDirectory = directory;
+        this.maxDiskBytes = maxDiskBytes > 0 ? maxDiskBytes : DEFAULT_MAX_DISK_BYTES;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create image cache directory " + directory);
+            this.diskDirectory = null;
+        }
+    }
+
+    public synchronized void clear() {
+        memory.evictAll();
+        if (diskDirectory != null) {
+            File[] files = diskDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hits + diskHits;
+    }
+
+    public synchronized int getDiskHitCount() {
+        return diskHits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return memory.evictionCount() + diskEvictions;
+    }
+
+    public synchronized int getSize() {
+        return memory.size();
+    }
+
+    public synchronized int getMaxSize() {
+        return memory.maxSize();
+    }
+
+    private File diskFile(String key) {
+        try {
+            return new File(diskDirectory, EscPosHelper.sha1Hex(key.getBytes("UTF-8")));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] readFromDisk(String key) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        File file = diskFile(key);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read cached image", e);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return bytes;
+    }
+
+    private void writeToDisk(String key, byte[] bytes) {
+        if (diskDirectory == null || bytes.length > maxDiskBytes) {
+            return;
+        }
+        File file = diskFile(key);
+        if (file == null) {
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write cached image", e);
+            file.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    /**
+     * Deletes the least recently used files until the tier fits maxDiskBytes.
+     */
+    private void trimDisk() {
+        File[] files = diskDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        while (total > maxDiskBytes) {
+            File oldest = null;
+            for (File file : files) {
+                if (file != null && (oldest == null || file.lastModified() < oldest.lastModified())) {
+                    oldest = file;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            total -= oldest.length();
+            oldest.delete();
+            diskEvictions++;
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] == oldest) {
+                    files[i] = null;
+                }
+            }
+        }
+    }
+}
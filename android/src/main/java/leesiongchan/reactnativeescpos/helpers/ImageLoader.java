@@ -0,0 +1,140 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.io.IOException;
+
+import gmrcp.reactnativeescpos.utils.Bitplane;
+import gmrcp.reactnativeescpos.utils.Ditherer;
+
+/**
+ * Decodes image files straight to printer resolution. The file is decoded
+ * with inSampleSize close to the target width, and images that would still be
+ * large once sampled are decoded band by band through BitmapRegionDecoder, so
+ * memory stays proportional to one band instead of the whole picture.
+ */
+public class ImageLoader {
+    private static final int BAND_HEIGHT = 24;
+    private static final int MAX_DECODE_BYTES = 2 * 1024 * 1024;
+
+    private ImageLoader() {
+    }
+
+    /**
+     * @param filePath  file path or file:// uri.
+     * @param maxWidth  widest the printed image may be.
+     * @param maxHeight tallest the printed image may be, 0 for no limit.
+     * @param enlarge   whether smaller images are scaled up to fit, like
+     *                  {@link EscPosHelper#resizeImage(Bitmap, int, int)} does.
+     */
+    public static Bitplane load(String filePath, int maxWidth, int maxHeight, boolean enlarge,
+            Ditherer.Mode ditherMode) throws IOException {
+        String path = Uri.parse(filePath).getPath();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        int sourceWidth = bounds.outWidth;
+        int sourceHeight = bounds.outHeight;
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            throw new IOException("Could not decode image: " + filePath);
+        }
+
+        int width = sourceWidth;
+        int height = sourceHeight;
+        if (maxWidth > 0 && (width > maxWidth || enlarge)) {
+            height = Math.max(1, (int) ((long) height * maxWidth / width));
+            width = maxWidth;
+        }
+        if (maxHeight > 0 && height > maxHeight) {
+            width = Math.max(1, (int) ((long) width * maxHeight / height));
+            height = maxHeight;
+        }
+
+        int sampleSize = sampleSize(sourceWidth, sourceHeight, width, height);
+        long sampledBytes = 4L * (sourceWidth / sampleSize) * (sourceHeight / sampleSize);
+        if (sampledBytes > MAX_DECODE_BYTES) {
+            BitmapRegionDecoder decoder = null;
+            try {
+                decoder = BitmapRegionDecoder.newInstance(path, false);
+            } catch (IOException e) {
+                // Format without region support, decode it whole below.
+            }
+            if (decoder != null) {
+                try {
+                    return decodeInBands(decoder, sampleSize, width, height, ditherMode);
+                } finally {
+                    decoder.recycle();
+                }
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) {
+            throw new IOException("Could not decode image: " + filePath);
+        }
+        Bitmap image = sampled;
+        if (sampled.getWidth() != width || sampled.getHeight() != height) {
+            image = Bitmap.createScaledBitmap(sampled, width, height, true);
+            sampled.recycle();
+        }
+        Bitplane bitplane = Bitplane.fromBitmap(image, ditherMode);
+        image.recycle();
+
+        return bitplane;
+    }
+
+    /**
+     * Largest power of two that still decodes at least width x height pixels.
+     */
+    static int sampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= width && sourceHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitplane decodeInBands(BitmapRegionDecoder decoder, int sampleSize, int width, int height,
+            Ditherer.Mode ditherMode) throws IOException {
+        int sourceWidth = decoder.getWidth();
+        int sourceHeight = decoder.getHeight();
+        Bitplane bitplane = new Bitplane(width, height);
+        Ditherer ditherer = new Ditherer(ditherMode, width);
+        int[] pixels = new int[width * BAND_HEIGHT];
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = sampleSize;
+        Rect region = new Rect();
+
+        for (int y = 0; y < height; y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, height - y);
+            int top = (int) ((long) y * sourceHeight / height);
+            int bottom = Math.max(top + 1, (int) ((long) (y + rows) * sourceHeight / height));
+            region.set(0, top, sourceWidth, Math.min(bottom, sourceHeight));
+
+            Bitmap sampled = decoder.decodeRegion(region, options);
+            if (sampled == null) {
+                throw new IOException("Could not decode image band at row " + top);
+            }
+            Bitmap band = Bitmap.createScaledBitmap(sampled, width, rows, true);
+            band.getPixels(pixels, 0, width, 0, 0, width, rows);
+            if (band != sampled) {
+                band.recycle();
+            }
+            sampled.recycle();
+
+            for (int r = 0; r < rows; r++) {
+                ditherer.ditherRow(pixels, r * width, y + r, bitplane.getData(), (y + r) * bitplane.getBytesPerRow());
+            }
+        }
+
+        return bitplane;
+    }
+}
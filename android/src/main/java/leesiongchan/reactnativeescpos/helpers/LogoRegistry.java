@@ -0,0 +1,124 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which logos a printer holds in its memory, with the hash of the
+ * uploaded raster and the file it came from. NV entries are persisted since NV
+ * memory survives power cycles; download (RAM) entries only live as long as
+ * this registry, i.e. the connection.
+ */
+public class LogoRegistry {
+    private static final String PREFERENCES_NAME = "escpos_logos";
+    private static final String SEPARATOR = "|";
+
+    public enum Target {
+        NV, DOWNLOAD, LEGACY_NV
+    }
+
+    public static class Entry {
+        public final String key;
+        public final Target target;
+        public final String hash;
+        public final String filePath;
+        public final long fileLength;
+        public final long fileModified;
+        public final String ditherMode;
+
+        public Entry(String key, Target target, String hash, String filePath, long fileLength, long fileModified,
+                String ditherMode) {
+            this.key = key;
+            this.target = target;
+            this.hash = hash;
+            this.filePath = filePath;
+            this.fileLength = fileLength;
+            this.fileModified = fileModified;
+            this.ditherMode = ditherMode;
+        }
+
+        private String serialize() {
+            return target.name() + SEPARATOR + hash + SEPARATOR + fileLength + SEPARATOR + fileModified + SEPARATOR
+                    + ditherMode + SEPARATOR + filePath;
+        }
+
+        private static Entry deserialize(String key, String value) {
+            String[] parts = value.split("\\|", 6);
+            if (parts.length < 6) {
+                return null;
+            }
+            try {
+                return new Entry(key, Target.valueOf(parts[0]), parts[1], parts[5], Long.parseLong(parts[2]),
+                        Long.parseLong(parts[3]), parts[4]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final SharedPreferences preferences;
+    private final String address;
+    private final Map<String, Entry> downloaded = new HashMap<>();
+
+    public LogoRegistry(Context context, String address) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.address = address;
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = downloaded.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        String value = preferences.getString(preferenceKey(key), null);
+        return value == null ? null : Entry.deserialize(key, value);
+    }
+
+    public synchronized void put(Entry entry) {
+        remove(entry.key);
+        if (entry.target == Target.DOWNLOAD) {
+            downloaded.put(entry.key, entry);
+        } else {
+            preferences.edit().putString(preferenceKey(entry.key), entry.serialize()).apply();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        downloaded.remove(key);
+        preferences.edit().remove(preferenceKey(key)).apply();
+    }
+
+    /**
+     * @return all entries of this printer stored with target, shorter keys
+     * first so numeric legacy keys come out in numeric order.
+     */
+    public synchronized List<Entry> getAll(Target target) {
+        List<Entry> entries = new ArrayList<>();
+        if (target == Target.DOWNLOAD) {
+            entries.addAll(downloaded.values());
+        } else {
+            String prefix = address + SEPARATOR;
+            for (Map.Entry<String, ?> stored : preferences.getAll().entrySet()) {
+                if (stored.getKey().startsWith(prefix) && stored.getValue() instanceof String) {
+                    Entry entry = Entry.deserialize(stored.getKey().substring(prefix.length()), (String) stored.getValue());
+                    if (entry != null && entry.target == target) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        Collections.sort(entries, (a, b) -> a.key.length() != b.key.length()
+                ? a.key.length() - b.key.length() : a.key.compareTo(b.key));
+        return entries;
+    }
+
+    private String preferenceKey(String key) {
+        return address + SEPARATOR + key;
+    }
+}
@@ -0,0 +1,16 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+
+public class PrinterStatusException extends RuntimeException {
+    private final PrinterStatus status;
+
+    public PrinterStatusException(PrinterStatus status) {
+        super("Printer is not ready: " + status);
+        this.status = status;
+    }
+
+    public PrinterStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,11 @@
+package gmrcp.reactnativeescpos.helpers;
+
+public class PrinterWriteException extends RuntimeException {
+    public PrinterWriteException(String message) {
+        super(message);
+    }
+
+    public PrinterWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,311 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import gmrcp.reactnativeescpos.command.CodePage;
+import gmrcp.reactnativeescpos.command.CodePageTable;
+
+/**
+ * Encodes text for one printer in its configured code page. The encoder and
+ * its char / byte buffers are kept between calls, so encoding a line
+ * allocates nothing once the buffers have grown to the longest line, and the
+ * code page selection is only sent when the printer is not already on it.
+ * Characters the page lacks are printed as '?'.
+ * <p>
+ * With several single byte code pages configured, each character is looked
+ * up in the pages' {@link CodePageTable}s instead, and when the current page
+ * lacks one the encoder switches to the page that covers the longest run of
+ * text from there, so switches (ESC t) happen only where they must.
+ * <p>
+ * With a {@link Fallback} set, runs of characters no configured page has are
+ * handed to it instead of being printed as '?'.
+ */
+public class TextEncoder {
+    /**
+     * Prints text the code pages cannot encode some other way, e.g. as an image.
+     */
+    public interface Fallback {
+        void write(String text, OutputStream out) throws IOException;
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private CodePage codePage;
+    private CharsetEncoder encoder;
+    private short[][] table;
+    private CodePage selected;
+    private CodePage[] autoPages;
+    private short[][][] autoTables;
+    private Fallback fallback;
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private ByteBuffer byteBuffer = ByteBuffer.allocate(INITIAL_CAPACITY * 2);
+
+    public TextEncoder(CodePage codePage) {
+        setCodePage(codePage);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the device has no charset for codePage.
+     */
+    public synchronized void setCodePage(CodePage codePage) {
+        autoPages = null;
+        autoTables = null;
+        if (codePage == this.codePage) {
+            return;
+        }
+        Charset charset;
+        try {
+            charset = Charset.forName(codePage.getCharsetName());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Code page " + codePage + " is not supported on this device", e);
+        }
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.table = codePage.isMultiByte() ? null : CodePageTable.get(codePage);
+        this.codePage = codePage;
+    }
+
+    /**
+     * Lets the encoder switch between single byte codePages as the text
+     * needs, preferring the earlier ones when several cover the same text.
+     *
+     * @throws IllegalArgumentException if a page is multi byte or not supported on this device.
+     */
+    public synchronized void setCodePages(CodePage... codePages) {
+        if (codePages.length == 1) {
+            setCodePage(codePages[0]);
+            return;
+        }
+        if (codePages.length == 0) {
+            throw new IllegalArgumentException("No code pages given");
+        }
+        short[][][] tables = new short[codePages.length][][];
+        for (int i = 0; i < codePages.length; i++) {
+            try {
+                tables[i] = CodePageTable.get(codePages[i]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Code page " + codePages[i] + " cannot be switched to automatically", e);
+            }
+        }
+        setCodePage(codePages[0]);
+        autoPages = codePages.clone();
+        autoTables = tables;
+    }
+
+    public synchronized CodePage getCodePage() {
+        return codePage;
+    }
+
+    /**
+     * @param fallback null to print what cannot be encoded as '?'.
+     */
+    public synchronized void setFallback(Fallback fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Forgets which page the printer is on, e.g. after it was reset or another
+     * app may have printed on it. The next text sends the selection again.
+     */
+    public synchronized void invalidate() {
+        selected = null;
+    }
+
+    /**
+     * Selects the code page on the printer if needed, then writes text encoded in it.
+     */
+    public synchronized void write(CharSequence text, OutputStream out) throws IOException {
+        int length = text.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, chars, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(0, length, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.charAt(i);
+            }
+        }
+        if (fallback == null) {
+            writeRange(0, length, out);
+            return;
+        }
+
+        encoder.reset();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            if (canEncode(chars[i])) {
+                i++;
+                continue;
+            }
+            int end = findUnencodableRunEnd(i, length);
+            if (i > start) {
+                writeRange(start, i, out);
+            }
+            fallback.write(new String(chars, i, end - i), out);
+            start = end;
+            i = end;
+        }
+        if (start < length || length == 0) {
+            writeRange(start, length, out);
+        }
+    }
+
+    private void writeRange(int start, int end, OutputStream out) throws IOException {
+        if (autoPages != null) {
+            writeAuto(start, end, out);
+            return;
+        }
+        if (selected != codePage) {
+            out.write(codePage.getSelectCommand());
+            selected = codePage;
+        }
+
+        charBuffer.limit(end).position(start);
+        byteBuffer.clear();
+        encoder.reset();
+
+        CoderResult result;
+        while ((result = encoder.encode(charBuffer, byteBuffer, true)).isOverflow()) {
+            grow();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            grow();
+        }
+
+        out.write(byteBuffer.array(), 0, byteBuffer.position());
+    }
+
+    private void writeAuto(int start, int end, OutputStream out) throws IOException {
+        byteBuffer.clear();
+
+        int current = -1;
+        for (int p = 0; p < autoPages.length; p++) {
+            if (autoPages[p] == selected) {
+                current = p;
+            }
+        }
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            int b = current < 0 ? CodePageTable.UNMAPPED : CodePageTable.lookup(autoTables[current], c);
+            if (b == CodePageTable.UNMAPPED) {
+                int best = findLongestRunPage(i, end);
+                if (best < 0) {
+                    // No page has it
+                    best = current < 0 ? 0 : current;
+                    if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                        i++;
+                    }
+                }
+                if (best != current) {
+                    put(autoPages[best].getSelectCommand());
+                    current = best;
+                }
+                b = CodePageTable.lookup(autoTables[current], c);
+                if (b == CodePageTable.UNMAPPED) {
+                    b = '?';
+                }
+            }
+            if (!byteBuffer.hasRemaining()) {
+                grow();
+            }
+            byteBuffer.put((byte) b);
+        }
+        if (current >= 0) {
+            selected = autoPages[current];
+        }
+
+        out.write(byteBuffer.array(), 0, byteBuffer.position());
+    }
+
+    private boolean canEncode(char c) {
+        if (c < 0x80) {
+            return true;
+        }
+        if (Character.isSurrogate(c)) {
+            return false;
+        }
+        if (autoTables != null) {
+            for (short[][] autoTable : autoTables) {
+                if (CodePageTable.lookup(autoTable, c) != CodePageTable.UNMAPPED) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (table != null) {
+            return CodePageTable.lookup(table, c) != CodePageTable.UNMAPPED;
+        }
+        return encoder.canEncode(c);
+    }
+
+    /**
+     * A run goes on over spaces between characters that cannot be encoded,
+     * so words of the same script are rendered, and ordered, together.
+     *
+     * @return the end of the run of characters that cannot be encoded at start.
+     */
+    private int findUnencodableRunEnd(int start, int end) {
+        int runEnd = start + 1;
+        for (int i = start + 1; i < end; i++) {
+            char c = chars[i];
+            if (!canEncode(c)) {
+                runEnd = i + 1;
+            } else if (c != ' ') {
+                break;
+            }
+        }
+        return runEnd;
+    }
+
+    /**
+     * @return the page that encodes the most characters from start on
+     * without a break, or -1 if none encodes the one at start.
+     */
+    private int findLongestRunPage(int start, int end) {
+        int best = -1;
+        int bestRun = 0;
+        for (int p = 0; p < autoTables.length; p++) {
+            short[][] table = autoTables[p];
+            int run = 0;
+            while (start + run < end && CodePageTable.lookup(table, chars[start + run]) != CodePageTable.UNMAPPED) {
+                run++;
+            }
+            if (run > bestRun) {
+                best = p;
+                bestRun = run;
+            }
+        }
+        return best;
+    }
+
+    private void put(byte[] bytes) {
+        while (byteBuffer.remaining() < bytes.length) {
+            grow();
+        }
+        byteBuffer.put(bytes);
+    }
+
+    private void grow() {
+        ByteBuffer bigger = ByteBuffer.allocate(byteBuffer.capacity() * 2);
+        byteBuffer.flip();
+        bigger.put(byteBuffer);
+        byteBuffer = bigger;
+    }
+}
@@ -0,0 +1,91 @@
+package gmrcp.reactnativeescpos.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import gmrcp.reactnativeescpos.utils.Bitplane;
+import gmrcp.reactnativeescpos.utils.Ditherer;
+
+/**
+ * Prints text no code page has, like Thai, Arabic or Hebrew, as a 24-dot
+ * ESC * band in line with the printer's own text, drawn with a system or
+ * bundled font. Android shapes and orders each run as it draws it. Rendered
+ * runs are kept in an LRU shared by all printers, keyed by font, size and
+ * text, so item names printed again cost a cache lookup.
+ * <p>
+ * The band is one text line high, so text on double height lines is drawn
+ * at normal size.
+ */
+public class TextRasterizer implements TextEncoder.Fallback {
+    public static final String DEFAULT_FONT = "default";
+    public static final int DEFAULT_CACHE_BYTES = 512 * 1024;
+    private static final int HEIGHT = 24;
+    private static final LruCache<String, byte[]> cache = new LruCache<String, byte[]>(DEFAULT_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    private final String fontName;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int baseline;
+    private int maxWidth;
+
+    /**
+     * @param typeface the font, or null for the system default.
+     * @param fontName names typeface in cache keys, e.g. its file path.
+     * @param maxWidth widest band in dots, the printing width.
+     */
+    public TextRasterizer(Typeface typeface, String fontName, int maxWidth) {
+        this.fontName = typeface != null ? fontName : DEFAULT_FONT;
+        this.maxWidth = maxWidth;
+        paint.setTypeface(typeface != null ? typeface : Typeface.DEFAULT);
+        paint.setColor(Color.BLACK);
+
+        // Fit ascent to descent into the band
+        paint.setTextSize(HEIGHT);
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        paint.setTextSize((float) HEIGHT * HEIGHT / Math.max(1, metrics.descent - metrics.ascent));
+        metrics = paint.getFontMetricsInt();
+        baseline = (HEIGHT - (metrics.descent - metrics.ascent)) / 2 - metrics.ascent;
+    }
+
+    public synchronized void setMaxWidth(int maxWidth) {
+        this.maxWidth = maxWidth;
+    }
+
+    @Override
+    public synchronized void write(String text, OutputStream out) throws IOException {
+        String key = fontName + '|' + HEIGHT + '|' + maxWidth + '|' + text;
+        byte[] band = cache.get(key);
+        if (band == null) {
+            band = render(text);
+            cache.put(key, band);
+        }
+        out.write(band);
+    }
+
+    public static void clearCache() {
+        cache.evictAll();
+    }
+
+    private byte[] render(String text) {
+        int width = Math.max(1, Math.min((int) Math.ceil(paint.measureText(text)), maxWidth));
+        Bitmap bitmap = Bitmap.createBitmap(width, HEIGHT, Bitmap.Config.ARGB_8888);
+        try {
+            bitmap.eraseColor(Color.WHITE);
+            new Canvas(bitmap).drawText(text, 0, baseline, paint);
+            return Bitplane.fromBitmap(bitmap, Ditherer.Mode.THRESHOLD).toInlineBitImage();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
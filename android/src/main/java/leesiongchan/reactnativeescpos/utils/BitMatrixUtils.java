@@ -24,4 +24,37 @@ public class BitMatrixUtils {
 
         return bitmap;
     }
+
+    /**
+     * Packs a matrix of modules straight into a bitplane, each module scale x
+     * scale dots. Every dot row of a module row is the same, so each is
+     * packed once and copied.
+     */
+    public static Bitplane toBitplane(BitMatrix data, int scale) {
+        return toBitplane(data, scale, scale);
+    }
+
+    public static Bitplane toBitplane(BitMatrix data, int scale, int rowScale) {
+        final int w = data.getWidth();
+        final int h = data.getHeight();
+        final Bitplane bitplane = new Bitplane(w * scale, h * rowScale);
+        final byte[] bits = bitplane.getData();
+        final int bytesPerRow = bitplane.getBytesPerRow();
+
+        for (int y = 0; y < h; y++) {
+            final int row = y * rowScale;
+            for (int x = 0; x < w; x++) {
+                if (data.get(x, y)) {
+                    for (int dot = x * scale, end = dot + scale; dot < end; dot++) {
+                        bitplane.set(dot, row);
+                    }
+                }
+            }
+            for (int r = 1; r < rowScale; r++) {
+                System.arraycopy(bits, row * bytesPerRow, bits, (row + r) * bytesPerRow, bytesPerRow);
+            }
+        }
+
+        return bitplane;
+    }
 }
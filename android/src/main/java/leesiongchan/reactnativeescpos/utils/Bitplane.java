@@ -0,0 +1,388 @@
+package gmrcp.reactnativeescpos.utils;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static io.github.escposjava.print.Commands.*;
+
+/**
+ * A 1-bit image packed row by row, 8 pixels per byte, most significant bit
+ * first. A set bit is a dot to print.
+ */
+public class Bitplane {
+    /**
+     * Horizontal alignment the image is printed with, see {@link #trim(Alignment)}.
+     */
+    public enum Alignment {
+        LEFT, CENTER, RIGHT
+    }
+
+    private static final int BAND_HEIGHT = 24;
+    private static final byte[] GS_v_0 = new byte[] { 0x1d, 'v', '0', 0x00 };
+    private static final byte[] GS_L_STORE = new byte[] { 0x1d, '(', 'L', 0x00, 0x00, 0x30, 0x70, 0x30, 0x01, 0x01, 0x31 };
+    private static final byte[] GS_L_PRINT = new byte[] { 0x1d, '(', 'L', 0x02, 0x00, 0x30, 0x32 };
+    private static final int GS_L_MAX_PARAMETERS = 0xffff;
+
+    private final int width;
+    private final int height;
+    private final int bytesPerRow;
+    private final byte[] data;
+
+    public Bitplane(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bytesPerRow = (width + 7) >> 3;
+        this.data = new byte[bytesPerRow * height];
+    }
+
+    public static Bitplane fromBitmap(Bitmap image) {
+        return fromBitmap(image, Ditherer.Mode.THRESHOLD);
+    }
+
+    /**
+     * Reads the whole bitmap with a single getPixels call and dithers it.
+     * Pixels that are not fully opaque are left white.
+     */
+    public static Bitplane fromBitmap(Bitmap image, Ditherer.Mode mode) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        Bitplane bitplane = new Bitplane(width, height);
+        Ditherer ditherer = new Ditherer(mode, width);
+        for (int y = 0; y < height; y++) {
+            ditherer.ditherRow(pixels, y * width, y, bitplane.data, y * bitplane.bytesPerRow);
+        }
+
+        return bitplane;
+    }
+
+    /**
+     * Integer approximation of 0.299 R + 0.587 G + 0.114 B.
+     */
+    public static int luminance(int color) {
+        return (((color >> 16) & 0xff) * 77 + ((color >> 8) & 0xff) * 150 + (color & 0xff) * 29) >> 8;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean get(int x, int y) {
+        return (data[y * bytesPerRow + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    public void set(int x, int y) {
+        data[y * bytesPerRow + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+    }
+
+    /**
+     * Returns this image without its white borders. Blank rows are always cut
+     * from the top and bottom; blank columns are cut only where that does not
+     * move the image on paper for the given alignment: the right margin when
+     * left aligned, the left margin when right aligned, and the same amount
+     * from both sides when centered.
+     */
+    public Bitplane trim(Alignment alignment) {
+        int top = 0;
+        while (top < height && isRowBlank(top)) {
+            top++;
+        }
+        if (top == height) {
+            return new Bitplane(width, 0);
+        }
+        int bottom = height;
+        while (isRowBlank(bottom - 1)) {
+            bottom--;
+        }
+
+        int right = inkedWidth(top, bottom - top);
+        int left = width;
+        for (int y = top; y < bottom && left > 0; y++) {
+            left = Math.min(left, firstInkedColumn(y, left));
+        }
+        int from;
+        int to;
+        switch (alignment) {
+            case CENTER:
+                int margin = Math.min(left, width - right);
+                from = margin;
+                to = width - margin;
+                break;
+            case RIGHT:
+                from = left;
+                to = width;
+                break;
+            case LEFT:
+            default:
+                from = 0;
+                to = right;
+        }
+        if (from == 0 && to == width && top == 0 && bottom == height) {
+            return this;
+        }
+        return crop(from, top, to - from, bottom - top);
+    }
+
+    /**
+     * Copies the given region into a new bitplane, shifting whole bytes at a time.
+     */
+    public Bitplane crop(int x, int y, int cropWidth, int cropHeight) {
+        Bitplane cropped = new Bitplane(cropWidth, cropHeight);
+        int shift = x & 7;
+        int lastMask = cropWidth % 8 == 0 ? 0xff : (0xff00 >> (cropWidth & 7)) & 0xff;
+        for (int r = 0; r < cropHeight; r++) {
+            int src = (y + r) * bytesPerRow + (x >> 3);
+            int srcEnd = (y + r + 1) * bytesPerRow;
+            int dst = r * cropped.bytesPerRow;
+            for (int i = 0; i < cropped.bytesPerRow; i++, src++) {
+                int bits = (data[src] & 0xff) << shift;
+                if (shift != 0 && src + 1 < srcEnd) {
+                    bits |= (data[src + 1] & 0xff) >> (8 - shift);
+                }
+                cropped.data[dst + i] = (byte) bits;
+            }
+            cropped.data[dst + cropped.bytesPerRow - 1] &= (byte) lastMask;
+        }
+        return cropped;
+    }
+
+    /**
+     * Writes the image as ESC * 24-dot double density bands, each followed by
+     * a line feed. All bands are built in one reused buffer. Runs of blank
+     * bands become a single ESC J paper feed, and with trimBands each band is
+     * only sent up to its last inked column, which is only safe when the image
+     * is left aligned.
+     */
+    public void writeBitImage(OutputStream out, boolean trimBands) throws IOException {
+        int header = SELECT_BIT_IMAGE_MODE.length;
+        byte[] band = new byte[header + 2 + width * 3 + CTL_LF.length];
+        System.arraycopy(SELECT_BIT_IMAGE_MODE, 0, band, 0, header);
+
+        int feed = 0;
+        for (int y = 0; y < height; y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, height - y);
+            int bandWidth = inkedWidth(y, rows);
+            if (bandWidth == 0) {
+                feed += BAND_HEIGHT;
+                continue;
+            }
+            writeFeed(out, feed);
+            feed = 0;
+
+            if (!trimBands) {
+                bandWidth = width;
+            }
+            int pos = fillBand(band, header, y, rows, bandWidth);
+            System.arraycopy(CTL_LF, 0, band, pos, CTL_LF.length);
+            out.write(band, 0, pos + CTL_LF.length);
+        }
+        writeFeed(out, feed);
+    }
+
+    public void writeBitImage(OutputStream out) throws IOException {
+        writeBitImage(out, false);
+    }
+
+    /**
+     * Returns the top 24 rows as a single ESC * band without line feed. Sent
+     * between text, it prints in line with the text around it.
+     */
+    public byte[] toInlineBitImage() {
+        int header = SELECT_BIT_IMAGE_MODE.length;
+        byte[] band = new byte[header + 2 + width * 3];
+        System.arraycopy(SELECT_BIT_IMAGE_MODE, 0, band, 0, header);
+        fillBand(band, header, 0, Math.min(BAND_HEIGHT, height), width);
+        return band;
+    }
+
+    /**
+     * Writes the ESC * width parameters at pos and then the band starting at
+     * row y, 3 bytes per column.
+     *
+     * @return the position after the band.
+     */
+    private int fillBand(byte[] band, int pos, int y, int rows, int bandWidth) {
+        band[pos++] = (byte) (bandWidth & 0xff);
+        band[pos++] = (byte) ((bandWidth >> 8) & 0xff);
+        for (int x = 0; x < bandWidth; x++) {
+            int column = x >> 3;
+            int mask = 0x80 >> (x & 7);
+            int bits = 0;
+            for (int r = 0; r < rows; r++) {
+                if ((data[(y + r) * bytesPerRow + column] & mask) != 0) {
+                    bits |= 0x800000 >> r;
+                }
+            }
+            band[pos++] = (byte) (bits >> 16);
+            band[pos++] = (byte) (bits >> 8);
+            band[pos++] = (byte) bits;
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the image as GS v 0 raster blocks of at most maxTileHeight rows.
+     * The packed rows are sent as they are, no repacking needed. Blank runs of
+     * a band or more are replaced by an ESC J paper feed.
+     */
+    public void writeRaster(OutputStream out, int maxTileHeight) throws IOException {
+        byte[] header = new byte[GS_v_0.length + 4];
+        System.arraycopy(GS_v_0, 0, header, 0, GS_v_0.length);
+
+        int tileHeight = Math.max(1, maxTileHeight);
+        int y = skipBlankRows(out, 0);
+        while (y < height) {
+            int end = inkedRunEnd(y);
+            for (; y < end; y += tileHeight) {
+                int rows = Math.min(tileHeight, end - y);
+                int pos = GS_v_0.length;
+                header[pos++] = (byte) (bytesPerRow & 0xff);
+                header[pos++] = (byte) ((bytesPerRow >> 8) & 0xff);
+                header[pos++] = (byte) (rows & 0xff);
+                header[pos] = (byte) ((rows >> 8) & 0xff);
+                out.write(header);
+                out.write(data, y * bytesPerRow, rows * bytesPerRow);
+            }
+            y = skipBlankRows(out, end);
+        }
+    }
+
+    /**
+     * Writes the image as GS ( L graphics: each tile is stored in the print
+     * buffer (function 112) and printed (function 50). A tile holds at most
+     * maxTileHeight rows and never more than the 65535 byte parameter limit.
+     * Blank runs of a band or more are replaced by an ESC J paper feed.
+     */
+    public void writeGraphics(OutputStream out, int maxTileHeight) throws IOException {
+        byte[] header = new byte[GS_L_STORE.length + 4];
+        System.arraycopy(GS_L_STORE, 0, header, 0, GS_L_STORE.length);
+
+        int maxRows = (GS_L_MAX_PARAMETERS - (header.length - 5)) / Math.max(bytesPerRow, 1);
+        int tileHeight = Math.max(1, Math.min(maxTileHeight, maxRows));
+        int y = skipBlankRows(out, 0);
+        while (y < height) {
+            int end = inkedRunEnd(y);
+            for (; y < end; y += tileHeight) {
+                int rows = Math.min(tileHeight, end - y);
+                int parameters = header.length - 5 + rows * bytesPerRow;
+                header[3] = (byte) (parameters & 0xff);
+                header[4] = (byte) ((parameters >> 8) & 0xff);
+                int pos = GS_L_STORE.length;
+                header[pos++] = (byte) (width & 0xff);
+                header[pos++] = (byte) ((width >> 8) & 0xff);
+                header[pos++] = (byte) (rows & 0xff);
+                header[pos] = (byte) ((rows >> 8) & 0xff);
+                out.write(header);
+                out.write(data, y * bytesPerRow, rows * bytesPerRow);
+                out.write(GS_L_PRINT);
+            }
+            y = skipBlankRows(out, end);
+        }
+    }
+
+    private boolean isRowBlank(int y) {
+        for (int i = y * bytesPerRow, end = i + bytesPerRow; i < end; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return one past the rightmost dot in rows y..y+rows, 0 if they are blank.
+     */
+    private int inkedWidth(int y, int rows) {
+        int inked = 0;
+        for (int r = y; r < y + rows; r++) {
+            int row = r * bytesPerRow;
+            for (int b = bytesPerRow - 1; b >= 0 && (b + 1) << 3 > inked; b--) {
+                if (data[row + b] != 0) {
+                    inked = Math.max(inked, (b << 3) + 8 - Integer.numberOfTrailingZeros(data[row + b] & 0xff));
+                    break;
+                }
+            }
+        }
+        return inked;
+    }
+
+    /**
+     * @return the leftmost dot in row y before limit, or limit if there is none.
+     */
+    private int firstInkedColumn(int y, int limit) {
+        int row = y * bytesPerRow;
+        for (int b = 0; b << 3 < limit; b++) {
+            if (data[row + b] != 0) {
+                return Math.min(limit, (b << 3) + Integer.numberOfLeadingZeros(data[row + b] & 0xff) - 24);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return the first row at or after y that starts a blank run of at
+     * least a band, or the height.
+     */
+    private int inkedRunEnd(int y) {
+        int blank = 0;
+        for (; y < height; y++) {
+            blank = isRowBlank(y) ? blank + 1 : 0;
+            if (blank == BAND_HEIGHT) {
+                return y + 1 - BAND_HEIGHT;
+            }
+        }
+        return height - blank;
+    }
+
+    private int skipBlankRows(OutputStream out, int y) throws IOException {
+        int from = y;
+        while (y < height && isRowBlank(y)) {
+            y++;
+        }
+        writeFeed(out, y - from);
+        return y;
+    }
+
+    private static void writeFeed(OutputStream out, int dots) throws IOException {
+        for (; dots > 0; dots -= 255) {
+            out.write(new byte[] { 0x1b, 'J', (byte) Math.min(dots, 255) });
+        }
+    }
+
+    /**
+     * Returns the image in column format as used by FS q: width padded to a
+     * multiple of 8, and for each column the rows top to bottom, 8 per byte.
+     */
+    public byte[] toColumnData() {
+        int columns = ((width + 7) >> 3) << 3;
+        int rowBytes = (height + 7) >> 3;
+        byte[] columnData = new byte[columns * rowBytes];
+        for (int x = 0; x < width; x++) {
+            int column = x >> 3;
+            int mask = 0x80 >> (x & 7);
+            int pos = x * rowBytes;
+            for (int y = 0; y < height; y++) {
+                if ((data[y * bytesPerRow + column] & mask) != 0) {
+                    columnData[pos + (y >> 3)] |= (byte) (0x80 >> (y & 7));
+                }
+            }
+        }
+        return columnData;
+    }
+}
@@ -0,0 +1,111 @@
+package gmrcp.reactnativeescpos.utils;
+
+import java.util.Arrays;
+
+/**
+ * How many character cells text takes on the printer: 2 for East Asian wide
+ * and fullwidth characters, 0 for combining marks and format characters, 1
+ * otherwise. Widths of the Basic Multilingual Plane are computed once into a
+ * two-level table of byte blocks, blocks of the same width shared, so a
+ * lookup is two array reads.
+ */
+public final class DisplayWidth {
+    // East Asian Wide (W) and Fullwidth (F) ranges, start and end inclusive
+    private static final int[] WIDE = {
+        0x1100, 0x115f, 0x231a, 0x231b, 0x2329, 0x232a, 0x23e9, 0x23ec, 0x23f0, 0x23f0, 0x23f3, 0x23f3,
+        0x25fd, 0x25fe, 0x2614, 0x2615, 0x2648, 0x2653, 0x267f, 0x267f, 0x2693, 0x2693, 0x26a1, 0x26a1,
+        0x26aa, 0x26ab, 0x26bd, 0x26be, 0x26c4, 0x26c5, 0x26ce, 0x26ce, 0x26d4, 0x26d4, 0x26ea, 0x26ea,
+        0x26f2, 0x26f3, 0x26f5, 0x26f5, 0x26fa, 0x26fa, 0x26fd, 0x26fd, 0x2705, 0x2705, 0x270a, 0x270b,
+        0x2728, 0x2728, 0x274c, 0x274c, 0x274e, 0x274e, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+        0x27b0, 0x27b0, 0x27bf, 0x27bf, 0x2b1b, 0x2b1c, 0x2b50, 0x2b50, 0x2b55, 0x2b55, 0x2e80, 0x303e,
+        0x3041, 0x33ff, 0x3400, 0x4dbf, 0x4e00, 0x9fff, 0xa000, 0xa4cf, 0xa960, 0xa97f, 0xac00, 0xd7a3,
+        0xf900, 0xfaff, 0xfe10, 0xfe19, 0xfe30, 0xfe6f, 0xff00, 0xff60, 0xffe0, 0xffe6
+    };
+    private static final int[] WIDE_SUPPLEMENTARY = {
+        0x16fe0, 0x18cff, 0x1b000, 0x1b2ff, 0x1f004, 0x1f004, 0x1f0cf, 0x1f0cf, 0x1f18e, 0x1f18e,
+        0x1f191, 0x1f19a, 0x1f200, 0x1f2ff, 0x1f300, 0x1f64f, 0x1f680, 0x1f6ff, 0x1f7e0, 0x1f7eb,
+        0x1f90c, 0x1f9ff, 0x1fa70, 0x1faff, 0x20000, 0x3fffd
+    };
+    private static final byte[][] BLOCKS = build();
+
+    private DisplayWidth() {
+    }
+
+    public static int of(char c) {
+        return BLOCKS[c >> 8][c & 0xff];
+    }
+
+    public static int ofCodePoint(int codePoint) {
+        if (codePoint <= 0xffff) {
+            return of((char) codePoint);
+        }
+        for (int i = 0; i < WIDE_SUPPLEMENTARY.length; i += 2) {
+            if (codePoint >= WIDE_SUPPLEMENTARY[i] && codePoint <= WIDE_SUPPLEMENTARY[i + 1]) {
+                return 2;
+            }
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.FORMAT ? 0 : 1;
+    }
+
+    /**
+     * @return the width of text[start, end).
+     */
+    public static int of(CharSequence text, int start, int end) {
+        int width = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                width += ofCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                width += of(c);
+            }
+        }
+        return width;
+    }
+
+    public static int of(CharSequence text) {
+        return of(text, 0, text.length());
+    }
+
+    private static byte[][] build() {
+        byte[] widths = new byte[0x10000];
+        for (int c = 0; c < widths.length; c++) {
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.FORMAT || type == Character.CONTROL) {
+                widths[c] = 0;
+            } else if (c >= 0x1160 && c <= 0x11ff) {
+                // Hangul vowels and final consonants join the preceding syllable
+                widths[c] = 0;
+            } else {
+                widths[c] = 1;
+            }
+        }
+        for (int i = 0; i < WIDE.length; i += 2) {
+            for (int c = WIDE[i]; c <= WIDE[i + 1]; c++) {
+                // Combining marks within the ranges stay 0
+                if (widths[c] != 0) {
+                    widths[c] = 2;
+                }
+            }
+        }
+
+        byte[][] uniform = new byte[3][256];
+        for (int width = 0; width < uniform.length; width++) {
+            Arrays.fill(uniform[width], (byte) width);
+        }
+        byte[][] blocks = new byte[256][];
+        for (int b = 0; b < blocks.length; b++) {
+            byte[] block = Arrays.copyOfRange(widths, b << 8, (b + 1) << 8);
+            blocks[b] = block;
+            for (byte[] shared : uniform) {
+                if (Arrays.equals(block, shared)) {
+                    blocks[b] = shared;
+                }
+            }
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,183 @@
+package gmrcp.reactnativeescpos.utils;
+
+import java.util.Arrays;
+
+/**
+ * Turns ARGB rows into packed 1-bit rows, one row at a time, so images can be
+ * fed to it in bands. Error diffusion keeps its state in rolling error rows
+ * sized to the image width; nothing is allocated per pixel.
+ */
+public class Ditherer {
+    public enum Mode {
+        THRESHOLD, BAYER, FLOYD_STEINBERG, ATKINSON;
+
+        /**
+         * Parses a mode name, ignoring case, '-' and '_'. No name gives
+         * THRESHOLD.
+         */
+        public static Mode parse(String name) {
+            if (name == null) {
+                return THRESHOLD;
+            }
+            String key = name.replace("-", "").replace("_", "").toUpperCase();
+            for (Mode mode : values()) {
+                if (mode.name().replace("_", "").equals(key)) {
+                    return mode;
+                }
+            }
+            switch (key) {
+                case "FS":
+                case "FLOYD":
+                    return FLOYD_STEINBERG;
+                case "ORDERED":
+                    return BAYER;
+                default:
+                    throw new IllegalArgumentException("Unknown dither mode: " + name);
+            }
+        }
+    }
+
+    private static final int THRESHOLD = 127;
+    private static final int WHITE = 255;
+    private static final int[] BAYER_8X8 = {
+         0, 32,  8, 40,  2, 34, 10, 42,
+        48, 16, 56, 24, 50, 18, 58, 26,
+        12, 44,  4, 36, 14, 46,  6, 38,
+        60, 28, 52, 20, 62, 30, 54, 22,
+         3, 35, 11, 43,  1, 33,  9, 41,
+        51, 19, 59, 27, 49, 17, 57, 25,
+        15, 47,  7, 39, 13, 45,  5, 37,
+        63, 31, 55, 23, 61, 29, 53, 21
+    };
+    private static final int[] BAYER_THRESHOLDS = new int[BAYER_8X8.length];
+
+    static {
+        for (int i = 0; i < BAYER_8X8.length; i++) {
+            BAYER_THRESHOLDS[i] = ((BAYER_8X8[i] * 2 + 1) * WHITE) / 128;
+        }
+    }
+
+    private final Mode mode;
+    private final int width;
+    // Padded by two on each side so neighbours never need a bounds check.
+    private int[] nextErrors;
+    private int[] afterNextErrors;
+    private int[] spareErrors;
+
+    public Ditherer(Mode mode, int width) {
+        this.mode = mode == null ? Mode.THRESHOLD : mode;
+        this.width = width;
+        if (this.mode == Mode.FLOYD_STEINBERG || this.mode == Mode.ATKINSON) {
+            nextErrors = new int[width + 4];
+        }
+        if (this.mode == Mode.ATKINSON) {
+            afterNextErrors = new int[width + 4];
+            spareErrors = new int[width + 4];
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Dithers one row of width ARGB pixels starting at argb[offset] and ORs the
+     * dots into dst starting at dst[dstOffset]. Rows must be given in order.
+     */
+    public void ditherRow(int[] argb, int offset, int y, byte[] dst, int dstOffset) {
+        switch (mode) {
+            case BAYER:
+                orderedRow(argb, offset, y, dst, dstOffset);
+                break;
+            case FLOYD_STEINBERG:
+                floydSteinbergRow(argb, offset, dst, dstOffset);
+                break;
+            case ATKINSON:
+                atkinsonRow(argb, offset, dst, dstOffset);
+                break;
+            case THRESHOLD:
+            default:
+                thresholdRow(argb, offset, dst, dstOffset);
+        }
+    }
+
+    private static int gray(int color) {
+        return (color >>> 24) == 0xff ? Bitplane.luminance(color) : WHITE;
+    }
+
+    private void thresholdRow(int[] argb, int offset, byte[] dst, int dstOffset) {
+        for (int x = 0; x < width; x++) {
+            if (gray(argb[offset + x]) < THRESHOLD) {
+                dst[dstOffset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+            }
+        }
+    }
+
+    private void orderedRow(int[] argb, int offset, int y, byte[] dst, int dstOffset) {
+        int row = (y & 7) << 3;
+        for (int x = 0; x < width; x++) {
+            if (gray(argb[offset + x]) < BAYER_THRESHOLDS[row + (x & 7)]) {
+                dst[dstOffset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+            }
+        }
+    }
+
+    /**
+     * Floyd-Steinberg with a single error row: errors[i] holds the error for
+     * the current row at positions not yet visited and for the next row at
+     * positions already visited.
+     */
+    private void floydSteinbergRow(int[] argb, int offset, byte[] dst, int dstOffset) {
+        int[] errors = nextErrors;
+        int right = 0;
+        int belowRight = 0;
+        for (int x = 0; x < width; x++) {
+            int i = x + 2;
+            int value = gray(argb[offset + x]) + errors[i] + right;
+            int error;
+            if (value < 128) {
+                dst[dstOffset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                error = value;
+            } else {
+                error = value - WHITE;
+            }
+            right = (error * 7) >> 4;
+            errors[i - 1] += (error * 3) >> 4;
+            errors[i] = belowRight + ((error * 5) >> 4);
+            belowRight = error >> 4;
+        }
+        errors[1] = 0;
+    }
+
+    /**
+     * Atkinson spreads 6/8 of the error over the next two rows, so it rolls
+     * three error rows: the current one and the two below it.
+     */
+    private void atkinsonRow(int[] argb, int offset, byte[] dst, int dstOffset) {
+        int[] current = nextErrors;
+        int[] below = afterNextErrors;
+        int[] twoBelow = spareErrors;
+        for (int x = 0; x < width; x++) {
+            int i = x + 2;
+            int value = gray(argb[offset + x]) + current[i];
+            int error;
+            if (value < 128) {
+                dst[dstOffset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                error = value;
+            } else {
+                error = value - WHITE;
+            }
+            int share = error >> 3;
+            current[i + 1] += share;
+            current[i + 2] += share;
+            below[i - 1] += share;
+            below[i] += share;
+            below[i + 1] += share;
+            twoBelow[i] += share;
+        }
+        Arrays.fill(current, 0);
+        nextErrors = below;
+        afterNextErrors = twoBelow;
+        spareErrors = current;
+    }
+}
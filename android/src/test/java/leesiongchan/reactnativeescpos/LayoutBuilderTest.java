@@ -0,0 +1,151 @@
+package gmrcp.reactnativeescpos;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares laying out designs into an Appendable with the line by line
+ * String building it replaced, on a long tabular report and on a line full
+ * of {RP:n:s} tags.
+ */
+public class LayoutBuilderTest {
+    private static final int CHARS_ON_LINE = LayoutBuilder.CHARS_ON_LINE_80_MM;
+
+    static String report(int rows) {
+        StringBuilder design = new StringBuilder();
+        design.append("Stock report\n");
+        design.append("{RP:48:=}\n");
+        design.append("Item {<>} Qty  Price  Amount\n");
+        design.append("---\n");
+        for (int i = 0; i < rows; i++) {
+            design.append("SKU-").append(10000 + i).append(" Pork Rice {<>}")
+                    .append(i % 9 + 1).append("  13.80  ").append((i % 9 + 1) * 138 / 10.0).append('\n');
+            if (i % 10 == 9) {
+                design.append("{RP:20:-} subtotal {RP:20:-}\n");
+            }
+        }
+        design.append("===\n");
+        design.append("Total {<>} 12345.60\n");
+        return design.toString();
+    }
+
+    static String repeats(int tags) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < tags; i++) {
+            line.append("|{RP:").append(i % 5 + 1).append(":ab}");
+        }
+        return line.toString();
+    }
+
+    @Test
+    public void matchesStringBuilding() throws IOException {
+        String design = report(500);
+        assertEquals(layoutWithStrings(design), new LayoutBuilder().createFromDesign(design, CHARS_ON_LINE));
+
+        String line = repeats(300);
+        assertEquals(repeatWithRegexes(line), new LayoutBuilder().duplicateStringSymbol(line));
+    }
+
+    @Test
+    public void allocatesLessThanStringBuilding() throws Exception {
+        final String design = report(500);
+        final LayoutBuilder layoutBuilder = new LayoutBuilder();
+        final StringBuilder out = new StringBuilder();
+        Measure.Task strings = () -> layoutWithStrings(design);
+        Measure.Task appendable = () -> {
+            out.setLength(0);
+            layoutBuilder.appendFromDesign(design, CHARS_ON_LINE, out);
+        };
+        long stringsBytes = Measure.allocatedBytes(strings);
+        long appendableBytes = Measure.allocatedBytes(appendable);
+        Measure.report("per-line Strings, 500 row report", Measure.bestNanos(20, strings), stringsBytes);
+        Measure.report("appendFromDesign, 500 row report", Measure.bestNanos(20, appendable), appendableBytes);
+
+        // Lines are read in place and appended to the reused builder
+        assertTrue(appendableBytes + " bytes", appendableBytes < 1024);
+        assertTrue(appendableBytes + " < " + stringsBytes, appendableBytes * 100 < stringsBytes);
+    }
+
+    @Test
+    public void repeatsInOnePass() throws Exception {
+        final LayoutBuilder layoutBuilder = new LayoutBuilder();
+        final StringBuilder out = new StringBuilder();
+        for (int tags : new int[] { 250, 1000 }) {
+            final String line = repeats(tags);
+            Measure.Task regexes = () -> repeatWithRegexes(line);
+            Measure.Task linear = () -> {
+                out.setLength(0);
+                layoutBuilder.appendRepeated(line, 0, line.length(), out);
+            };
+            long regexBytes = Measure.allocatedBytes(regexes);
+            long linearBytes = Measure.allocatedBytes(linear);
+            Measure.report("replaceFirst per tag, " + tags + " tags", Measure.bestNanos(5, regexes), regexBytes);
+            Measure.report("appendRepeated, " + tags + " tags", Measure.bestNanos(5, linear), linearBytes);
+
+            // The old path copies the whole line for every tag
+            assertTrue(linearBytes + " bytes", linearBytes < 1024);
+            assertTrue(regexBytes + " bytes", regexBytes > (long) tags * line.length());
+        }
+    }
+
+    /**
+     * The layout this replaced, less the menu item wrapping the report does
+     * not need: a String per line, padded and joined with + "\n".
+     */
+    private static String layoutWithStrings(String text) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        StringBuilder designText = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int separator;
+            if (line.startsWith("---")) {
+                designText.append(StringUtils.repeat('-', CHARS_ON_LINE) + "\n");
+            } else if (line.startsWith("===")) {
+                designText.append(StringUtils.repeat('=', CHARS_ON_LINE) + "\n");
+            } else if (line.contains("{RP:")) {
+                designText.append(repeatWithRegexes(line));
+            } else if ((separator = line.indexOf("{<>}")) >= 0) {
+                String key = line.substring(0, separator);
+                String value = line.substring(separator + 4);
+                designText.append(StringUtils.rightPad(key, CHARS_ON_LINE - value.length(), ' ') + value + "\n");
+            } else {
+                designText.append(line);
+                designText.append("\n");
+            }
+        }
+        return designText.toString();
+    }
+
+    /**
+     * The {RP:n:s} expansion this replaced: a regex counts the tags, then
+     * each one is found and replaced in the whole line.
+     */
+    private static String repeatWithRegexes(String text) {
+        String repeatTag = "{RP:";
+        Matcher m = Pattern.compile("\\" + repeatTag + "\\d+:.*?\\}").matcher(text);
+        int tagCount = 0;
+        while (m.find()) {
+            tagCount++;
+        }
+        for (int x = 0; x < tagCount; x++) {
+            int rpIndex = text.indexOf(repeatTag);
+            String workingString = text.substring(rpIndex + repeatTag.length(), text.indexOf('}'));
+            int separatorIdx = workingString.indexOf(':');
+            String count = workingString.substring(0, separatorIdx);
+            String symbol = workingString.substring(separatorIdx + 1);
+            String repeatedSymbol = StringUtils.repeat(symbol, Integer.parseInt(count));
+            String replaceRepeatTag = repeatTag + workingString + "}";
+            text = text.replaceFirst(Pattern.quote(replaceRepeatTag), Matcher.quoteReplacement(repeatedSymbol));
+        }
+        return text + "\n";
+    }
+}
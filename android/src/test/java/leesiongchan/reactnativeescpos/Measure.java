@@ -0,0 +1,52 @@
+package gmrcp.reactnativeescpos;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Timing and allocation counts for the benchmark tests. Allocation counts are
+ * exact per thread, so tests assert on them and only report times.
+ */
+public final class Measure {
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Measure() {
+    }
+
+    /**
+     * @return the bytes task allocated on this thread in one run, after warming it up.
+     */
+    public static long allocatedBytes(Task task) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        task.run();
+        return THREADS.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * @return the fastest of runs runs of task in nanoseconds, after warming it up.
+     */
+    public static long bestNanos(int runs, Task task) throws Exception {
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    public static void report(String name, long nanos, long bytes) {
+        System.out.printf("%-44s %9.3f ms %,12d bytes%n", name, nanos / 1e6, bytes);
+    }
+}
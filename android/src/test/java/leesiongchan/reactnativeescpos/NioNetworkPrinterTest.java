@@ -0,0 +1,116 @@
+package gmrcp.reactnativeescpos;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import gmrcp.reactnativeescpos.helpers.PrinterWriteException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs NioNetworkPrinter against a local ServerSocket standing in for the
+ * printer: one that reads, one that never reads and one that hangs up.
+ */
+public class NioNetworkPrinterTest {
+    private ServerSocket server;
+    private NioNetworkPrinter printer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0);
+        printer = new NioNetworkPrinter("127.0.0.1", server.getLocalPort());
+        printer.setOptions(2000, 500, 4096);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        printer.close();
+        server.close();
+    }
+
+    @Test
+    public void writesReachThePrinter() throws Exception {
+        printer.open();
+        byte[] command = new byte[100000];
+        for (int i = 0; i < command.length; i++) {
+            command[i] = (byte) i;
+        }
+        try (Socket peer = server.accept()) {
+            final byte[] received = new byte[command.length * 2];
+            final InputStream in = peer.getInputStream();
+            Thread reader = new Thread(() -> {
+                try {
+                    int n = 0;
+                    int read;
+                    while (n < received.length && (read = in.read(received, n, received.length - n)) > 0) {
+                        n += read;
+                    }
+                } catch (IOException e) {
+                    // The comparison below fails
+                }
+            });
+            reader.start();
+            printer.write(command);
+            printer.write(command);
+            reader.join(5000);
+            assertArrayEquals(command, Arrays.copyOfRange(received, 0, command.length));
+            assertArrayEquals(command, Arrays.copyOfRange(received, command.length, received.length));
+        }
+    }
+
+    @Test
+    public void writeTimesOutWhenThePrinterStopsReading() throws Exception {
+        printer.open();
+        try (Socket peer = server.accept()) {
+            peer.setReceiveBufferSize(4096);
+            long started = System.nanoTime();
+            try {
+                // Far more than the socket buffers on both ends hold
+                printer.write(new byte[16 * 1024 * 1024]);
+                fail("The write should have timed out");
+            } catch (PrinterWriteException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+            }
+            long millis = (System.nanoTime() - started) / 1000000;
+            assertTrue(millis + " ms", millis >= 500 && millis < 5000);
+
+            // The connection is given up, later writes fail at once
+            try {
+                printer.write(new byte[] { 0x1b, '@' });
+                fail("The connection should be failed");
+            } catch (PrinterWriteException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+            }
+        }
+    }
+
+    @Test
+    public void failsWhenThePrinterHangsUp() throws Exception {
+        printer.open();
+        server.accept().close();
+
+        try {
+            printer.read(new byte[1], 0, 1, 2000);
+            fail("The read should see the connection close");
+        } catch (EOFException e) {
+            // Expected
+        }
+        try {
+            printer.write(new byte[] { 0x1b, '@' });
+            fail("The write should fail");
+        } catch (PrinterWriteException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof EOFException);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package gmrcp.reactnativeescpos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import gmrcp.reactnativeescpos.command.PrinterStatus;
+import gmrcp.reactnativeescpos.helpers.PrinterStatusException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs PrinterStatusMonitor against a fake printer that answers DLE EOT
+ * requests with scripted replies and can slip Automatic Status Back
+ * messages in between them. The JVM tests' clock stands still, so a status
+ * is as old as its maxAge only when maxAge is 0.
+ */
+public class PrinterStatusMonitorTest {
+    private static final byte READY = 0x12;
+    private static final byte[] COVER_OPEN_MESSAGE = { 0x30, 0x00, 0x00, 0x00 };
+
+    /**
+     * Answers DLE EOT n with replies[n - 1], after whatever is in pushed.
+     */
+    static class FakePrinter implements ReadablePrinter {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final byte[] replies = { READY, READY, READY, READY };
+        boolean answering = true;
+        byte[] pushed = new byte[0];
+        private final ByteArrayOutputStream incoming = new ByteArrayOutputStream();
+        private int readPosition = 0;
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void write(byte[] command) {
+            written.write(command, 0, command.length);
+            if (command.length == 3 && command[0] == 0x10 && command[1] == 0x04) {
+                incoming.write(pushed, 0, pushed.length);
+                pushed = new byte[0];
+                if (answering) {
+                    incoming.write(replies[command[2] - 1]);
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length, int timeoutMillis) {
+            byte[] bytes = incoming.toByteArray();
+            int n = Math.min(length, bytes.length - readPosition);
+            System.arraycopy(bytes, readPosition, buffer, offset, n);
+            readPosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void send(byte[] bytes) {
+            incoming.write(bytes, 0, bytes.length);
+        }
+
+        int requests() {
+            int requests = 0;
+            byte[] bytes = written.toByteArray();
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                if (bytes[i] == 0x10 && bytes[i + 1] == 0x04) {
+                    requests++;
+                }
+            }
+            return requests;
+        }
+    }
+
+    private FakePrinter printer;
+    private PrinterStatusMonitor monitor;
+    private final List<PrinterStatus> changes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        printer = new FakePrinter();
+        monitor = new PrinterStatusMonitor(new BufferedPrinter(printer));
+        monitor.setListener(changes::add);
+    }
+
+    @Test
+    public void asksWithDleEotOneToFour() throws IOException {
+        printer.replies[2] = READY | 0x08;
+        PrinterStatus status = monitor.getStatus(0);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int n = 1; n <= 4; n++) {
+            expected.write(PrinterStatus.request(n));
+        }
+        assertArrayEquals(expected.toByteArray(), printer.written.toByteArray());
+        assertTrue(status.isCutterError());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void asksAgainOnlyWhenStale() throws IOException {
+        monitor.getStatus(PrinterStatusMonitor.DEFAULT_MAX_AGE_MILLIS);
+        monitor.getStatus(PrinterStatusMonitor.DEFAULT_MAX_AGE_MILLIS);
+        assertEquals(4, printer.requests());
+
+        printer.replies[1] = READY | 0x04;
+        PrinterStatus status = monitor.getStatus(0);
+        assertEquals(8, printer.requests());
+        assertTrue(status.isCoverOpen());
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void readsStatusBackBetweenReplies() throws IOException {
+        monitor.setAutomaticStatusBack(true);
+        assertArrayEquals(PrinterStatus.automaticStatusBack(true), printer.written.toByteArray());
+
+        // The message comes in after DLE EOT 1 and before its reply
+        printer.pushed = COVER_OPEN_MESSAGE;
+        printer.replies[3] = READY | 0x0c;
+        PrinterStatus status = monitor.getStatus(0);
+
+        // The replies still line up with their requests
+        assertTrue(status.isPaperNearEnd());
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(0).isCoverOpen());
+
+        // Once the printer pushes its status, it is not asked again
+        int requests = printer.requests();
+        printer.send(COVER_OPEN_MESSAGE);
+        assertTrue(monitor.getStatus(0).isCoverOpen());
+        assertEquals(requests, printer.requests());
+    }
+
+    @Test
+    public void takesSilentPrintersAsReady() throws IOException {
+        printer.answering = false;
+        assertNull(monitor.getStatus(0));
+        assertEquals(1, printer.requests());
+
+        // Not asked again until reopened
+        assertNull(monitor.getStatus(0));
+        monitor.checkReady();
+        assertEquals(1, printer.requests());
+
+        monitor.onOpen();
+        assertNull(monitor.getStatus(0));
+        assertEquals(2, printer.requests());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenAnAnsweringPrinterFallsSilent() throws IOException {
+        monitor.getStatus(0);
+        printer.answering = false;
+        monitor.getStatus(0);
+    }
+
+    @Test
+    public void refusesJobsThePrinterCannotPrint() {
+        printer.replies[3] = READY | 0x60;
+        try {
+            monitor.checkReady();
+            fail("A printer out of paper should fail the check");
+        } catch (PrinterStatusException e) {
+            assertTrue(e.getStatus().isPaperOut());
+        }
+
+        monitor.setCheckBeforeJobs(false, 0);
+        int requests = printer.requests();
+        monitor.checkReady();
+        assertEquals(requests, printer.requests());
+    }
+}
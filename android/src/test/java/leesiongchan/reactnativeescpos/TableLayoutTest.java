@@ -0,0 +1,63 @@
+package gmrcp.reactnativeescpos;
+
+import org.junit.Test;
+
+import gmrcp.reactnativeescpos.utils.DisplayWidth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lays out a {TABLE} of mixed width text: rows must line up by display
+ * width, and a 500 row inventory must allocate no more than a 50 row one.
+ */
+public class TableLayoutTest {
+    private static final String[] ITEMS = {
+        "Pork Rice", "叉烧饭", "김치찌개", "Café au lait", "ﾗｰﾒﾝ", "Ｔｅａ", "Cake 🍰", "éclair"
+    };
+
+    public static String inventory(int rows) {
+        StringBuilder design = new StringBuilder();
+        design.append("{TABLE:*L,4R,8R}\n");
+        design.append("Item {<>} Qty {<>} Amount\n");
+        for (int i = 0; i < rows; i++) {
+            design.append(ITEMS[i % ITEMS.length]).append(" {<>} ").append(i % 99 + 1)
+                    .append(" {<>} ").append(i % 1000).append(".80\n");
+        }
+        design.append("{/TABLE}\n");
+        return design.toString();
+    }
+
+    @Test
+    public void alignsWideText() throws Exception {
+        StringBuilder out = new StringBuilder();
+        new LayoutBuilder(LayoutBuilder.CHARS_ON_LINE_58_MM).appendFromDesign(inventory(40),
+                LayoutBuilder.CHARS_ON_LINE_58_MM, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(41, lines.length);
+        for (String line : lines) {
+            // The last column is right aligned, so every row fills the line
+            assertEquals(line, LayoutBuilder.CHARS_ON_LINE_58_MM, DisplayWidth.of(line));
+        }
+    }
+
+    @Test
+    public void laysOutTablesInOnePass() throws Exception {
+        final LayoutBuilder layoutBuilder = new LayoutBuilder();
+        final StringBuilder out = new StringBuilder();
+        long[] bytes = new long[2];
+        int[] rows = { 50, 500 };
+        for (int i = 0; i < rows.length; i++) {
+            final String design = inventory(rows[i]);
+            Measure.Task layout = () -> {
+                out.setLength(0);
+                layoutBuilder.appendFromDesign(design, LayoutBuilder.CHARS_ON_LINE_80_MM, out);
+            };
+            bytes[i] = Measure.allocatedBytes(layout);
+            Measure.report("{TABLE} layout, " + rows[i] + " rows", Measure.bestNanos(20, layout), bytes[i]);
+        }
+        // Only the table spec is parsed, the rows allocate nothing
+        assertEquals(bytes[0], bytes[1]);
+        assertTrue(bytes[1] + " bytes", bytes[1] < 2048);
+    }
+}
@@ -0,0 +1,121 @@
+package gmrcp.reactnativeescpos.command;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the Code 128 code set choices, and the barcode rules checked before
+ * anything is sent to the printer.
+ */
+public class Code128Test {
+    private static byte[] bytes(Object... parts) {
+        StringBuilder text = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof Integer) {
+                text.append((char) (int) (Integer) part);
+            } else {
+                text.append(part);
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void assertRejected(String code, int type) {
+        try {
+            PrinterCommand.validateBarcode(code, type);
+            fail(code + " should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void packsDigitsInCodeSetC() {
+        assertArrayEquals(bytes("{C", 12, 34, 56, 78, 90), Code128.encode("1234567890"));
+        // An odd digit goes in A, the rest in pairs
+        assertArrayEquals(bytes("{A1{C", 23, 45), Code128.encode("12345"));
+        // Too few digits to pay for the switch
+        assertArrayEquals(bytes("{A123"), Code128.encode("123"));
+    }
+
+    @Test
+    public void switchesForDigitRunsInText() {
+        assertArrayEquals(bytes("{B12a{C", 34, 56, 78, 90), Code128.encode("12a34567890"));
+        assertArrayEquals(bytes("{BOrder {C", 12, 34), Code128.encode("Order 1234"));
+    }
+
+    @Test
+    public void shiftsForSingleCharacters() {
+        assertArrayEquals(bytes("{Bab{S", 9, "cd"), Code128.encode("ab\tcd"));
+        assertArrayEquals(bytes("{AAB{Sc", 1), Code128.encode("ABc\u0001"));
+    }
+
+    @Test
+    public void escapesBraces() {
+        assertArrayEquals(bytes("{Ba{{b"), Code128.encode("a{b"));
+    }
+
+    @Test
+    public void passesEncodedTextThrough() {
+        assertArrayEquals(bytes("{A12", 1), Code128.encode("{A12\u0001"));
+        assertArrayEquals(bytes("{C", 12), Code128.encode("{C\u000c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonAscii() {
+        Code128.encode("café");
+    }
+
+    @Test
+    public void sendsEncodedCode128() {
+        byte[] command = PrinterCommand.getBarCodeCommand("1234", PrinterCommand.BARCODE_CODE128, 2, 100, 0, 2);
+        assertEquals(4, command[15]);
+        assertArrayEquals(bytes("{C", 12, 34), Arrays.copyOfRange(command, 16, command.length));
+    }
+
+    @Test
+    public void checksUpcAndEan() {
+        PrinterCommand.validateBarcode("036000291452", PrinterCommand.BARCODE_UPC_A);
+        PrinterCommand.validateBarcode("03600029145", PrinterCommand.BARCODE_UPC_A);
+        assertRejected("036000291453", PrinterCommand.BARCODE_UPC_A);
+        assertRejected("03600029145a", PrinterCommand.BARCODE_UPC_A);
+        assertRejected("0360002914", PrinterCommand.BARCODE_UPC_A);
+
+        PrinterCommand.validateBarcode("4006381333931", PrinterCommand.BARCODE_EAN13);
+        PrinterCommand.validateBarcode("400638133393", PrinterCommand.BARCODE_EAN13);
+        assertRejected("4006381333932", PrinterCommand.BARCODE_EAN13);
+
+        PrinterCommand.validateBarcode("96385074", PrinterCommand.BARCODE_EAN8);
+        PrinterCommand.validateBarcode("9638507", PrinterCommand.BARCODE_EAN8);
+        assertRejected("96385075", PrinterCommand.BARCODE_EAN8);
+    }
+
+    @Test
+    public void checksUpcE() {
+        // One for each way the sixth digit expands: 012000003455, 012300000451, 012340000053, 012345000065
+        PrinterCommand.validateBarcode("01234505", PrinterCommand.BARCODE_UPC_E);
+        PrinterCommand.validateBarcode("01234531", PrinterCommand.BARCODE_UPC_E);
+        PrinterCommand.validateBarcode("01234543", PrinterCommand.BARCODE_UPC_E);
+        PrinterCommand.validateBarcode("01234565", PrinterCommand.BARCODE_UPC_E);
+        PrinterCommand.validateBarcode("0123456", PrinterCommand.BARCODE_UPC_E);
+        PrinterCommand.validateBarcode("012345000065", PrinterCommand.BARCODE_UPC_E);
+
+        assertRejected("01234566", PrinterCommand.BARCODE_UPC_E);
+        assertRejected("012345000066", PrinterCommand.BARCODE_UPC_E);
+        assertRejected("21234565", PrinterCommand.BARCODE_UPC_E);
+        assertRejected("012345000", PrinterCommand.BARCODE_UPC_E);
+    }
+
+    @Test
+    public void checksItf() {
+        PrinterCommand.validateBarcode("1234", PrinterCommand.BARCODE_ITF);
+        assertRejected("123", PrinterCommand.BARCODE_ITF);
+        assertRejected("12a4", PrinterCommand.BARCODE_ITF);
+    }
+}
@@ -0,0 +1,111 @@
+package gmrcp.reactnativeescpos.command;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every bit of the DLE EOT 1 to 4 replies and of Automatic Status
+ * Back messages that PrinterStatus reads.
+ */
+public class PrinterStatusTest {
+    // The fixed bits of a DLE EOT reply and of an ASB message's first byte
+    private static final int REPLY = 0x12;
+    private static final int ASB = 0x10;
+
+    private static PrinterStatus realTime(int printer, int offline, int error, int paper) {
+        return PrinterStatus.fromRealTime(new byte[] {
+            (byte) (REPLY | printer), (byte) (REPLY | offline), (byte) (REPLY | error), (byte) (REPLY | paper)
+        });
+    }
+
+    private static PrinterStatus automaticStatusBack(int first, int error, int paper) {
+        return PrinterStatus.fromAutomaticStatusBack(new byte[] {
+            (byte) (ASB | first), (byte) error, (byte) paper, 0
+        });
+    }
+
+    @Test
+    public void buildsRequests() {
+        assertArrayEquals(new byte[] { 0x10, 0x04, 0x01 }, PrinterStatus.request(1));
+        assertArrayEquals(new byte[] { 0x10, 0x04, 0x04 }, PrinterStatus.request(4));
+        assertArrayEquals(new byte[] { 0x1d, 'a', 0x0f }, PrinterStatus.automaticStatusBack(true));
+        assertArrayEquals(new byte[] { 0x1d, 'a', 0x00 }, PrinterStatus.automaticStatusBack(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownRequests() {
+        PrinterStatus.request(5);
+    }
+
+    @Test
+    public void tellsRepliesFromStatusBack() {
+        assertTrue(PrinterStatus.isReply(0x12));
+        assertTrue(PrinterStatus.isReply(0x7e));
+        assertFalse(PrinterStatus.isReply(0x10));
+        assertFalse(PrinterStatus.isReply(0x13));
+        assertFalse(PrinterStatus.isReply(0x92));
+
+        assertTrue(PrinterStatus.isAutomaticStatusBackStart(0x10));
+        assertTrue(PrinterStatus.isAutomaticStatusBackStart(0x7c));
+        assertFalse(PrinterStatus.isAutomaticStatusBackStart(0x12));
+        assertFalse(PrinterStatus.isAutomaticStatusBackStart(0x11));
+        assertFalse(PrinterStatus.isAutomaticStatusBackStart(0x90));
+    }
+
+    @Test
+    public void readsRealTimeReplies() {
+        PrinterStatus ready = realTime(0, 0, 0, 0);
+        assertTrue(ready.isReady());
+        assertTrue(ready.isOnline());
+        assertEquals(Collections.emptyList(), ready.getProblems());
+        assertEquals("ready", ready.toString());
+
+        // DLE EOT 1, printer status
+        assertFalse(realTime(0x08, 0, 0, 0).isOnline());
+        assertTrue(realTime(0x04, 0, 0, 0).isDrawerOpen());
+        assertTrue(realTime(0x04, 0, 0, 0).isReady());
+        // DLE EOT 2, offline cause
+        assertTrue(realTime(0, 0x04, 0, 0).isCoverOpen());
+        assertTrue(realTime(0, 0x08, 0, 0).isPaperFeeding());
+        assertTrue(realTime(0, 0x20, 0, 0).isPaperOut());
+        // DLE EOT 3, error cause
+        assertTrue(realTime(0, 0, 0x08, 0).isCutterError());
+        assertTrue(realTime(0, 0, 0x20, 0).isUnrecoverableError());
+        assertTrue(realTime(0, 0, 0x40, 0).isRecoverableError());
+        // DLE EOT 4, paper roll sensors
+        assertTrue(realTime(0, 0, 0, 0x0c).isPaperNearEnd());
+        assertTrue(realTime(0, 0, 0, 0x0c).isReady());
+        assertTrue(realTime(0, 0, 0, 0x60).isPaperOut());
+        assertFalse(realTime(0, 0, 0, 0x60).isReady());
+
+        assertFalse(ready.equals(realTime(0x04, 0, 0, 0)));
+        assertEquals(Arrays.asList("paper out", "cover open"), realTime(0x08, 0x24, 0, 0).getProblems());
+        assertEquals("offline", realTime(0x08, 0, 0, 0).toString());
+        assertEquals("ready, paper near end", realTime(0, 0, 0, 0x0c).toString());
+    }
+
+    @Test
+    public void readsStatusBackMessages() {
+        assertEquals(realTime(0, 0, 0, 0), automaticStatusBack(0, 0, 0));
+
+        assertFalse(automaticStatusBack(0x08, 0, 0).isOnline());
+        assertTrue(automaticStatusBack(0x04, 0, 0).isDrawerOpen());
+        assertTrue(automaticStatusBack(0x20, 0, 0).isCoverOpen());
+        assertTrue(automaticStatusBack(0x40, 0, 0).isPaperFeeding());
+        assertTrue(automaticStatusBack(0, 0x08, 0).isCutterError());
+        assertTrue(automaticStatusBack(0, 0x20, 0).isUnrecoverableError());
+        assertTrue(automaticStatusBack(0, 0x40, 0).isRecoverableError());
+        assertTrue(automaticStatusBack(0, 0, 0x03).isPaperNearEnd());
+        assertTrue(automaticStatusBack(0, 0, 0x0c).isPaperOut());
+
+        // Both ways of reporting a status give equal statuses
+        assertEquals(realTime(0, 0x04, 0x08, 0x60), automaticStatusBack(0x20, 0x08, 0x0c));
+    }
+}
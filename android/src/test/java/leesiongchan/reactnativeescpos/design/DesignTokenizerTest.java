@@ -0,0 +1,185 @@
+package gmrcp.reactnativeescpos.design;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gmrcp.reactnativeescpos.Measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the single pass tokenizer with the per-line regex scanning it
+ * replaced, on a 200 line receipt, and checks how tag options are read.
+ */
+public class DesignTokenizerTest {
+    private static final Pattern QR_PATTERN = Pattern.compile("\\{QR\\[(.+)\\]\\}");
+    private static final Pattern BC_PATTERN = Pattern.compile("\\{BC\\[(.+)\\]\\}");
+    private static final String[] STYLE_TAGS = {
+        "{B}", "{U}", "{H1}", "{H2}", "{H3}", "{LS:M}", "{LS:L}", "{C}", "{R}"
+    };
+    private static final int[] STYLES = {
+        DesignLine.BOLD, DesignLine.UNDERLINE, DesignLine.H1, DesignLine.H2, DesignLine.H3,
+        DesignLine.LINE_SPACE_M, DesignLine.LINE_SPACE_L, DesignLine.CENTER, DesignLine.RIGHT
+    };
+
+    static String receipt(int lines) {
+        StringBuilder design = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (i % 8) {
+                case 0:
+                    design.append("{H2}{C}Order ").append(i).append('\n');
+                    break;
+                case 1:
+                    design.append("------------------------------------------\n");
+                    break;
+                case 2:
+                    design.append("{B}Pork Rice {<>} 1 {<>} 13.80\n");
+                    break;
+                case 3:
+                    design.append("    - No sugar, Regular 9oz, Hot\n");
+                    break;
+                case 4:
+                    design.append("{R}{U} x ${qty}\n");
+                    break;
+                case 5:
+                    design.append("{BC[D000").append(i).append("]}\n");
+                    break;
+                case 6:
+                    design.append("{QR[https://example.com/order/").append(i).append("]}\n");
+                    break;
+                default:
+                    design.append("{LS:M}Thank you{H3}\n");
+            }
+        }
+        return design.toString();
+    }
+
+    @Test
+    public void matchesRegexScanning() {
+        String design = receipt(200);
+        DesignTokenizer tokenizer = new DesignTokenizer();
+        for (String line : design.split("\n")) {
+            tokenizer.tokenize(line, 0, line.length());
+            String[] expected = scanWithRegexes(line);
+            assertEquals(line, expected[0], String.valueOf(tokenizer.getStyles()));
+            assertEquals(line, expected[2], tokenizer.getQRCode());
+            assertEquals(line, expected[3], tokenizer.getBarcode());
+            if (expected[2] == null && expected[3] == null) {
+                assertEquals(line, expected[1], tokenizer.getText());
+            }
+        }
+    }
+
+    @Test
+    public void readsQROptions() {
+        DesignTokenizer tokenizer = new DesignTokenizer();
+        String line = "{QR[order 42]:h:6}";
+        tokenizer.tokenize(line, 0, line.length());
+        assertEquals("order 42", tokenizer.getQRCode());
+        assertEquals(6, tokenizer.getQRModuleSize());
+        assertEquals(ErrorCorrectionLevel.H, tokenizer.getQRErrorCorrection());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownErrorCorrection() {
+        String line = "{QR[order 42]:X}";
+        new DesignTokenizer().tokenize(line, 0, line.length());
+    }
+
+    @Test
+    public void readsSymbolSizes() {
+        DesignTokenizer tokenizer = new DesignTokenizer();
+        String line = "{PDF417[order 42]:3}";
+        tokenizer.tokenize(line, 0, line.length());
+        assertEquals("order 42", tokenizer.getSymbol());
+        assertEquals(3, tokenizer.getSymbolSize());
+    }
+
+    @Test
+    public void rejectsNonNumericSymbolOptions() {
+        DesignTokenizer tokenizer = new DesignTokenizer();
+        for (String line : new String[] { "{PDF417[order 42]:wide}", "{DM[order 42]:4:big}", "{MAXI[order 42]:-2}" }) {
+            try {
+                tokenizer.tokenize(line, 0, line.length());
+                fail(line + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void allocatesLessThanRegexScanning() throws Exception {
+        final String design = receipt(200);
+        final String[] lines = design.split("\n");
+        final DesignTokenizer tokenizer = new DesignTokenizer();
+        Measure.Task tokenize = () -> {
+            int start = 0;
+            for (String line : lines) {
+                tokenizer.tokenize(design, start, start + line.length());
+                start += line.length() + 1;
+            }
+        };
+        Measure.Task regexes = () -> {
+            for (String line : lines) {
+                scanWithRegexes(line);
+            }
+        };
+
+        long tokenizeBytes = Measure.allocatedBytes(tokenize);
+        long regexBytes = Measure.allocatedBytes(regexes);
+        Measure.report("tokenizer, 200 lines", Measure.bestNanos(50, tokenize), tokenizeBytes);
+        Measure.report("regex scanning, 200 lines", Measure.bestNanos(50, regexes), regexBytes);
+        assertTrue(tokenizeBytes * 2 < regexBytes);
+    }
+
+    @Test
+    public void compiledTemplateIsReused() throws Exception {
+        final String design = receipt(200);
+        final DesignTemplate template = DesignCompiler.compile(design);
+        assertEquals(200, template.getLines().size());
+
+        long compileBytes = Measure.allocatedBytes(() -> DesignCompiler.compile(design));
+        long reuseBytes = Measure.allocatedBytes(() -> {
+            for (DesignLine line : template.getLines()) {
+                line.getText().isStatic();
+            }
+        });
+        Measure.report("compile 200 lines", Measure.bestNanos(50, () -> DesignCompiler.compile(design)),
+                compileBytes);
+        Measure.report("reuse compiled template", 0, reuseBytes);
+        assertTrue(reuseBytes * 100 < compileBytes);
+    }
+
+    /**
+     * The scanning DesignCompiler did before the tokenizer.
+     *
+     * @return the styles, clean text, QR code and barcode of line.
+     */
+    private static String[] scanWithRegexes(String line) {
+        String qrCode = null;
+        String barcode = null;
+        Matcher qrMatcher = QR_PATTERN.matcher(line);
+        if (qrMatcher.find()) {
+            qrCode = qrMatcher.group(1);
+        }
+        Matcher bcMatcher = BC_PATTERN.matcher(line);
+        if (bcMatcher.find()) {
+            barcode = bcMatcher.group(1);
+        }
+        int styles = 0;
+        for (int i = 0; i < STYLE_TAGS.length; i++) {
+            if (line.contains(STYLE_TAGS[i])) {
+                styles |= STYLES[i];
+                line = line.replace(STYLE_TAGS[i], "");
+            }
+        }
+        return new String[]{String.valueOf(styles), line, qrCode, barcode};
+    }
+}
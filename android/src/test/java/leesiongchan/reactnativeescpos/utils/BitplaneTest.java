@@ -0,0 +1,210 @@
+package gmrcp.reactnativeescpos.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import gmrcp.reactnativeescpos.Measure;
+
+import static io.github.escposjava.print.Commands.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares packing an image into a bitplane and writing it as ESC * bands
+ * with the per-column slice collection it replaced, at 58 mm and 80 mm
+ * printer widths, and counts the bytes trimming white borders saves.
+ */
+public class BitplaneTest {
+    private static final int HEIGHT = 800;
+    private static final int BLACK = 0xff000000;
+    private static final int WHITE = 0xffffffff;
+    private static final int DARK_GRAY = 0xff3c3c3c;
+    private static final int LIGHT_GRAY = 0xffc8c8c8;
+    private static final int TRANSPARENT_BLACK = 0x40000000;
+    // ESC J n
+    private static final int FEED_LENGTH = 3;
+    // GS v 0 m xL xH yL yH
+    private static final int RASTER_HEADER_LENGTH = 8;
+
+    /**
+     * Diagonal stripes of clearly dark and light pixels, so every band has
+     * ink and both luminance formulas agree on every pixel.
+     */
+    static int[] image(int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int stripe = ((x + y) / 7) & 3;
+                int color = stripe == 0 ? BLACK : stripe == 1 ? LIGHT_GRAY : stripe == 2 ? DARK_GRAY : WHITE;
+                if ((x ^ y) % 31 == 0) {
+                    color = TRANSPARENT_BLACK;
+                }
+                argb[y * width + x] = color;
+            }
+        }
+        return argb;
+    }
+
+    static Bitplane pack(int[] argb, int width, int height) {
+        Bitplane bitplane = new Bitplane(width, height);
+        Ditherer ditherer = new Ditherer(Ditherer.Mode.THRESHOLD, width);
+        for (int y = 0; y < height; y++) {
+            ditherer.ditherRow(argb, y * width, y, bitplane.getData(), y * bitplane.getBytesPerRow());
+        }
+        return bitplane;
+    }
+
+    @Test
+    public void matchesColumnSlicing() throws IOException {
+        for (int width : new int[] { 384, 576 }) {
+            int[] argb = image(width, HEIGHT);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            writeWithColumnSlices(argb, width, HEIGHT, expected);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            pack(argb, width, HEIGHT).writeBitImage(actual);
+            assertArrayEquals("width " + width, expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void allocatesLessThanColumnSlicing() throws Exception {
+        for (final int width : new int[] { 384, 576 }) {
+            final int[] argb = image(width, HEIGHT);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Measure.Task slices = () -> {
+                out.reset();
+                writeWithColumnSlices(argb, width, HEIGHT, out);
+            };
+            Measure.Task bitplane = () -> {
+                out.reset();
+                pack(argb, width, HEIGHT).writeBitImage(out);
+            };
+            long slicesBytes = Measure.allocatedBytes(slices);
+            long bitplaneBytes = Measure.allocatedBytes(bitplane);
+            Measure.report("column slices, " + width + " x " + HEIGHT, Measure.bestNanos(20, slices), slicesBytes);
+            Measure.report("bitplane, " + width + " x " + HEIGHT, Measure.bestNanos(20, bitplane), bitplaneBytes);
+
+            // One 3 byte array per column and band before, the packed image and one band buffer now
+            assertTrue(bitplaneBytes + " < " + slicesBytes, bitplaneBytes * 2 < slicesBytes);
+        }
+    }
+
+    /**
+     * A 100 x 72 dot logo at x 200, y 48 on an 80 mm wide, 200 row canvas.
+     */
+    static Bitplane logoWithMargins() {
+        Bitplane bitplane = new Bitplane(576, 200);
+        for (int y = 48; y < 120; y++) {
+            for (int x = 200; x < 300; x += (y & 1) + 1) {
+                bitplane.set(x, y);
+            }
+        }
+        return bitplane;
+    }
+
+    @Test
+    public void trimKeepsTheInk() {
+        Bitplane left = logoWithMargins().trim(Bitplane.Alignment.LEFT);
+        assertEquals(300, left.getWidth());
+        assertEquals(72, left.getHeight());
+        assertTrue(left.get(200, 0));
+        assertFalse(left.get(199, 0));
+
+        Bitplane center = logoWithMargins().trim(Bitplane.Alignment.CENTER);
+        assertEquals(176, center.getWidth());
+        assertTrue(center.get(0, 0));
+        assertTrue(center.get(98, 71));
+
+        Bitplane right = logoWithMargins().trim(Bitplane.Alignment.RIGHT);
+        assertEquals(376, right.getWidth());
+        assertTrue(right.get(0, 0));
+    }
+
+    @Test
+    public void trimCutsBitImageBytes() throws IOException {
+        int band = SELECT_BIT_IMAGE_MODE.length + 2 + CTL_LF.length;
+        Bitplane bitplane = logoWithMargins();
+        // 3 inked bands of the full width, the blank ones above and below fed
+        assertEquals(3 * (band + 576 * 3) + 2 * FEED_LENGTH, bitImageLength(bitplane));
+        assertEquals(3 * (band + 300 * 3), bitImageLength(bitplane.trim(Bitplane.Alignment.LEFT)));
+        assertEquals(3 * (band + 176 * 3), bitImageLength(bitplane.trim(Bitplane.Alignment.CENTER)));
+        report("ESC * untrimmed", bitImageLength(bitplane));
+        report("ESC * trimmed left", bitImageLength(bitplane.trim(Bitplane.Alignment.LEFT)));
+        report("ESC * trimmed center", bitImageLength(bitplane.trim(Bitplane.Alignment.CENTER)));
+    }
+
+    @Test
+    public void trimCutsRasterBytes() throws IOException {
+        Bitplane bitplane = logoWithMargins();
+        assertEquals(RASTER_HEADER_LENGTH + 72 * 72 + 2 * FEED_LENGTH, rasterLength(bitplane));
+        assertEquals(RASTER_HEADER_LENGTH + 72 * 38, rasterLength(bitplane.trim(Bitplane.Alignment.LEFT)));
+        assertEquals(RASTER_HEADER_LENGTH + 72 * 22, rasterLength(bitplane.trim(Bitplane.Alignment.CENTER)));
+        report("GS v 0 untrimmed", rasterLength(bitplane));
+        report("GS v 0 trimmed left", rasterLength(bitplane.trim(Bitplane.Alignment.LEFT)));
+        report("GS v 0 trimmed center", rasterLength(bitplane.trim(Bitplane.Alignment.CENTER)));
+    }
+
+    private static int bitImageLength(Bitplane bitplane) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitplane.writeBitImage(out);
+        return out.size();
+    }
+
+    private static int rasterLength(Bitplane bitplane) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitplane.writeRaster(out, 256);
+        return out.size();
+    }
+
+    private static void report(String name, int bytes) {
+        System.out.printf("%-44s %,12d bytes%n", name, bytes);
+    }
+
+    /**
+     * The image writing this replaced: 3 bytes collected per column of each
+     * band, every pixel thresholded on its own with float luminance.
+     */
+    private static void writeWithColumnSlices(int[] argb, int width, int height, OutputStream out)
+            throws IOException {
+        for (int y = 0; y < height; y += 24) {
+            out.write(SELECT_BIT_IMAGE_MODE);
+            out.write(new byte[] { (byte) (0x00ff & width), (byte) ((0xff00 & width) >> 8) });
+            for (int x = 0; x < width; x++) {
+                out.write(collectImageSlice(argb, width, height, y, x));
+            }
+            out.write(CTL_LF);
+        }
+    }
+
+    private static byte[] collectImageSlice(int[] argb, int width, int height, int y, int x) {
+        byte[] slices = new byte[] { 0, 0, 0 };
+        for (int yy = y, i = 0; yy < y + 24 && i < 3; yy += 8, i++) {
+            byte slice = 0;
+            for (int b = 0; b < 8; b++) {
+                int yyy = yy + b;
+                if (yyy >= height) {
+                    continue;
+                }
+                boolean v = shouldPrintColor(argb[yyy * width + x]);
+                slice |= (byte) ((v ? 1 : 0) << (7 - b));
+            }
+            slices[i] = slice;
+        }
+        return slices;
+    }
+
+    private static boolean shouldPrintColor(int color) {
+        if (((color >> 24) & 0xff) != 0xff) {
+            return false;
+        }
+        int r = (color >> 16) & 0xff;
+        int g = (color >> 8) & 0xff;
+        int b = color & 0xff;
+        return (int) (0.299 * r + 0.587 * g + 0.114 * b) < 127;
+    }
+}
@@ -0,0 +1,40 @@
+package gmrcp.reactnativeescpos.utils;
+
+import org.junit.Test;
+
+import gmrcp.reactnativeescpos.Measure;
+import gmrcp.reactnativeescpos.TableLayoutTest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the display width table against the characters receipts mix, and
+ * that measuring a 500 row inventory allocates nothing.
+ */
+public class DisplayWidthTest {
+    @Test
+    public void measuresCells() {
+        assertEquals(1, DisplayWidth.of('A'));
+        assertEquals(2, DisplayWidth.of('中'));
+        assertEquals(2, DisplayWidth.of('김'));
+        assertEquals(2, DisplayWidth.of('Ｔ'));
+        assertEquals(1, DisplayWidth.of('ﾗ'));
+        assertEquals(0, DisplayWidth.of('\u0301'));
+        assertEquals(0, DisplayWidth.of('\u200b'));
+        assertEquals(2, DisplayWidth.ofCodePoint(0x1f370));
+        assertEquals(6, DisplayWidth.of("叉烧饭"));
+        assertEquals(6, DisplayWidth.of("éclair"));
+        assertEquals(7, DisplayWidth.of("Cake 🍰"));
+    }
+
+    @Test
+    public void measuresWithoutAllocating() throws Exception {
+        final String text = TableLayoutTest.inventory(500);
+        final int[] width = new int[1];
+        Measure.Task measure = () -> width[0] = DisplayWidth.of(text);
+        long bytes = Measure.allocatedBytes(measure);
+        Measure.report("DisplayWidth.of, 500 rows (" + text.length() + " chars)", Measure.bestNanos(50, measure),
+                bytes);
+        assertEquals(0, bytes);
+    }
+}